@@ -0,0 +1,37 @@
+package org.cooltrainer.xval;
+
+/**
+ * Serial number / 'X' value pairs shared by the benchmarks, one per kind of result.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+final class BenchmarkInput {
+	static final String SERIAL = "112345674205";
+
+	/** Decrypts to all zeroes */
+	static final String CLEAN = "ABE5-03C6-FF66-2168";
+
+	/** Decrypts to Console Banned and AuthEx Challenge Failure */
+	static final String FLAGGED = "F155-5FD8-B1EB-5DF4";
+
+	/** Doesn't belong to SERIAL, so decrypts to junk */
+	static final String INVALID = "0123-4567-89AB-CDEF";
+
+	private BenchmarkInput() {
+	}
+
+	/**
+	 * @param kind		"clean", "flagged" or "invalid"
+	 * @return			The 'X' value for that kind of result
+	 */
+	static String xval(String kind) {
+		if ("clean".equals(kind))
+			return CLEAN;
+		if ("flagged".equals(kind))
+			return FLAGGED;
+		if ("invalid".equals(kind))
+			return INVALID;
+		throw new IllegalArgumentException("Unknown input kind " + kind);
+	}
+}
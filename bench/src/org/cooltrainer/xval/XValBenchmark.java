@@ -0,0 +1,108 @@
+package org.cooltrainer.xval;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link XVal} decryption, conversion and flag formatting paths.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XValBenchmark {
+	/** 'X' values per bulk hex conversion */
+	private static final int BULK = 1024;
+
+	@Param({ "clean", "flagged", "invalid" })
+	public String input;
+
+	private String serial, xval;
+	private byte[] encrypted, decrypted;
+	private int[] split;
+	private long packedSerial, packedXVal;
+	private XValKernel kernel;
+	private final long[] values = new long[BULK];
+	private final byte[] digits = new byte[BULK * 16];
+
+	@Setup
+	public void setUp() throws XValException {
+		this.serial = BenchmarkInput.SERIAL;
+		this.xval = BenchmarkInput.xval(this.input);
+		this.encrypted = XVal.hexToBytes(this.xval.replace("-", ""));
+		this.decrypted = XVal.DecryptXVal(this.serial, this.encrypted);
+		this.split = XVal.splitXVal(this.decrypted);
+		this.packedSerial = Long.parseLong(this.serial);
+		this.packedXVal = new BigInteger(this.xval.replace("-", ""), 16).longValue();
+		this.kernel = new XValKernel();
+		for (int i = 0; i < BULK; i++)
+			this.values[i] = this.packedXVal * (i + 1);
+		HexCodec.encode(this.values, 0, BULK, this.digits, 0, 16, true);
+	}
+
+	@Benchmark
+	public byte[] decryptString() throws XValException {
+		return XVal.DecryptXVal(this.serial, this.xval);
+	}
+
+	@Benchmark
+	public byte[] decryptBytes() throws XValException {
+		return XVal.DecryptXVal(this.serial, this.encrypted);
+	}
+
+	@Benchmark
+	public long decryptKernel() {
+		return this.kernel.decrypt(this.packedSerial, this.packedXVal);
+	}
+
+	@Benchmark
+	public byte[] hexToBytes() {
+		return XVal.hexToBytes(this.xval.replace("-", ""));
+	}
+
+	@Benchmark
+	public String bytesToHex() {
+		return XVal.bytesToHex(this.decrypted);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BULK)
+	public int hexDecodeBulk() {
+		return HexCodec.decode(this.digits, 0, 16, this.values, 0, BULK);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BULK)
+	public byte[] hexEncodeBulk() {
+		HexCodec.encode(this.values, 0, BULK, this.digits, 0, 16, true);
+		return this.digits;
+	}
+
+	@Benchmark
+	public int[] splitXVal() {
+		return XVal.splitXVal(this.decrypted);
+	}
+
+	@Benchmark
+	public String flags() {
+		return XVal.flags(this.split);
+	}
+}
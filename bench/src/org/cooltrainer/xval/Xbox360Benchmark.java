@@ -0,0 +1,73 @@
+package org.cooltrainer.xval;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link Xbox360} input validation and serial number decoding.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Xbox360Benchmark {
+	/** A valid serial and 'X' value, or malformed ones of each */
+	@Param({ "valid", "invalid" })
+	public String input;
+
+	private String serial, xval;
+	private Xbox360 xbox;
+
+	@Setup
+	public void setUp() {
+		if ("valid".equals(this.input)) {
+			this.serial = BenchmarkInput.SERIAL;
+			this.xval = BenchmarkInput.FLAGGED;
+		} else {
+			this.serial = "11234567420";
+			this.xval = "F155-5FD8-B1EB-5DFG";
+		}
+		this.xbox = new Xbox360(BenchmarkInput.SERIAL);
+	}
+
+	@Benchmark
+	public boolean validSerial() {
+		return Xbox360.validSerial(this.serial);
+	}
+
+	@Benchmark
+	public boolean validXVal() {
+		return Xbox360.validXVal(this.xval);
+	}
+
+	@Benchmark
+	public Xbox360 parseSerial() {
+		return new Xbox360(this.serial);
+	}
+
+	@Benchmark
+	public String mfgDate() {
+		return this.xbox.mfgDate();
+	}
+
+	@Benchmark
+	public String factoryName() {
+		return this.xbox.factoryName();
+	}
+}
@@ -0,0 +1,398 @@
+package org.cooltrainer.xval;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The XValCheck class checks serial number / 'X' value pairs from the
+ * command line, reading them from files or standard input.
+ *
+ * <pre>
+ * java org.cooltrainer.xval.XValCheck [options] [file ...]
+ *
+ *   -t threads   Worker threads to decrypt on (default: one per processor)
+ *   -f format    text, csv or json (default: text)
+ *   -o file      Write results to a file instead of standard output
+ *   -q           No live summary
+ *   -d pairs     Reuse the results of repeated pairs, with a filter sized for this many distinct pairs
+ *   -s pattern xval
+ *                Recover a partly unreadable serial number instead; see {@link XValSerialSearch}
+ *
+ * Input rows:   serial,xval[,anything else]   (comma, tab, semicolon or space separated)
+ * </pre>
+ *
+ * With no files, or a file named "-", pairs are read from standard input.
+ * Pairs are decrypted in batches on an {@link XValBatchDecryptor}, and while
+ * they are, a summary of pairs per second and clean, flagged and invalid
+ * counts is kept up to date on standard error. With -d, pairs that keep
+ * coming back are screened out by an {@link XValDedup} before decryption.
+ *
+ * Exits with 0 once every row is checked, 1 on a read or write failure
+ * and 2 on bad arguments. A serial number search exits with 0 if any
+ * serial number matched and 3 if none did.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValCheck {
+	/** Rows decrypted per batch */
+	private static final int BATCH = 16384;
+
+	/** Milliseconds between live summary updates */
+	private static final long SUMMARY_INTERVAL = 1000;
+
+	private enum Format {
+		TEXT, CSV, JSON
+	}
+
+	private final XValBatchDecryptor decryptor;
+	private final Format format;
+	private final Writer out;
+
+	private final long[] serials = new long[BATCH];
+	private final long[] encrypted = new long[BATCH];
+	private final long[] decrypted = new long[BATCH];
+	private final String[] malformed = new String[BATCH];
+	private final boolean[] wellFormed = new boolean[BATCH];
+	private final XValDedup dedup;
+	private ByteBuffer lineBytes = ByteBuffer.allocate(256);
+	private int rows;
+	private boolean first = true;
+
+	private final XValAuditStats stats = new XValAuditStats();
+	/** Copy of the totals as of the last finished batch, for the summary thread */
+	private volatile XValAuditStats published = new XValAuditStats();
+
+	private XValCheck(XValBatchDecryptor decryptor, XValDedup dedup, Format format, Writer out) {
+		this.decryptor = decryptor;
+		this.dedup = dedup;
+		this.format = format;
+		this.out = out;
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Format format = Format.TEXT;
+		String output = null;
+		boolean quiet = false;
+		long dedupPairs = 0;
+		String[] search = null;
+		List<String> inputs = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-t")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-f")) {
+					format = Format.valueOf(args[++i].toUpperCase());
+				} else if (arg.equals("-o")) {
+					output = args[++i];
+				} else if (arg.equals("-q")) {
+					quiet = true;
+				} else if (arg.equals("-d")) {
+					dedupPairs = Long.parseLong(args[++i]);
+				} else if (arg.equals("-s")) {
+					search = new String[] { args[++i], args[++i] };
+				} else if (arg.startsWith("-") && arg.length() > 1) {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				} else {
+					inputs.add(arg);
+				}
+			}
+			if (threads < 1)
+				throw new IllegalArgumentException("At least one thread is needed");
+			if (dedupPairs < 0)
+				throw new IllegalArgumentException("Dedup pair count can't be negative");
+		} catch (RuntimeException e) {
+			// Missing option values, bad numbers and unknown formats all end up here
+			System.err.println("Usage: XValCheck [-t threads] [-f text|csv|json] [-o file] [-q] [-d pairs] [file ...]");
+			System.err.println("       XValCheck [-t threads] [-q] -s serial-pattern xval");
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.exit(2);
+		}
+		if (inputs.isEmpty())
+			inputs.add("-");
+
+		XValBatchDecryptor decryptor = new XValBatchDecryptor(threads);
+		if (search != null) {
+			int status;
+			try {
+				status = search(decryptor, search[0], search[1], quiet);
+			} catch (XValException e) {
+				System.err.println("XValCheck: " + e.getMessage());
+				status = 2;
+			} finally {
+				decryptor.shutdown();
+			}
+			System.exit(status);
+		}
+
+		int status = 0;
+		try {
+			OutputStream os = (output == null) ? System.out : new FileOutputStream(output);
+			Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), 1 << 16);
+			XValDedup dedup = (dedupPairs > 0) ? new XValDedup(dedupPairs, XValDedup.DEFAULT_FALSE_POSITIVE_RATE) : null;
+			XValCheck check = new XValCheck(decryptor, dedup, format, out);
+			Thread summary = quiet ? null : check.startSummary();
+
+			long start = System.nanoTime();
+			try {
+				check.begin();
+				for (String input : inputs)
+					check.read(input.equals("-") ? System.in : new FileInputStream(input));
+				check.end();
+			} finally {
+				if (summary != null)
+					summary.interrupt();
+				out.close();
+			}
+			check.printSummary(start, true);
+			if (dedup != null)
+				System.err.println(dedup);
+		} catch (IOException e) {
+			System.err.println();
+			System.err.println("XValCheck: " + e.getMessage());
+			status = 1;
+		} finally {
+			decryptor.shutdown();
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Searches for the serial numbers a pattern allows that match an 'X' value,
+	 * printing each one found on standard output.
+	 *
+	 * @return				Exit status: 0 if any matched, 3 if none did
+	 */
+	private static int search(XValBatchDecryptor decryptor, String pattern, String xval, final boolean quiet) throws XValException {
+		XValSerialSearch search = new XValSerialSearch(pattern, xval);
+		final long start = System.nanoTime();
+		List<String> found = search.search(decryptor, 0, new XValSerialSearch.Listener() {
+			public void progress(long checked, long candidates) {
+				if (!quiet) {
+					double seconds = (System.nanoTime() - start) / 1e9;
+					System.err.print("\r" + checked + " of " + candidates + " candidates, "
+							+ (seconds > 0 ? (long) (checked / seconds) : 0) + " per second");
+				}
+			}
+
+			public void found(String serial) {
+				System.out.println(serial);
+			}
+		});
+		if (!quiet)
+			System.err.println();
+		return found.isEmpty() ? 3 : 0;
+	}
+
+	/**
+	 * Reads and checks every row of one input, then closes it.
+	 */
+	private void read(InputStream input) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"), 1 << 16);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				ByteBuffer bytes = ascii(line);
+				if (XValParser.isBlankRow(bytes, 0, bytes.limit()))
+					continue;
+				int row = this.rows++;
+				this.wellFormed[row] = parseRow(bytes, row);
+				this.malformed[row] = this.wellFormed[row] ? null : line;
+				if (this.rows == BATCH)
+					finishBatch();
+			}
+			finishBatch();
+		} finally {
+			if (input != System.in)
+				reader.close();
+		}
+	}
+
+	/**
+	 * Parses one row into the batch arrays.
+	 *
+	 * @return				true if the row holds a serial number and an 'X' value
+	 */
+	private boolean parseRow(ByteBuffer line, int row) {
+		return XValParser.parseRow(line, 0, line.limit(), this.serials, this.encrypted, row);
+	}
+
+	/**
+	 * Copies a line into the reusable row buffer as ASCII, for the row parser
+	 * {@link XValFileAudit} uses. Anything outside ASCII can't be part of a
+	 * well-formed row, so it becomes '?'.
+	 */
+	private ByteBuffer ascii(String line) {
+		if (this.lineBytes.capacity() < line.length())
+			this.lineBytes = ByteBuffer.allocate(Math.max(line.length(), 2 * this.lineBytes.capacity()));
+		ByteBuffer bytes = this.lineBytes;
+		bytes.clear();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			bytes.put((byte) (c < 0x80 ? c : '?'));
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	/**
+	 * Decrypts the pending batch and writes its results in input order.
+	 */
+	private void finishBatch() throws IOException {
+		int count = this.rows;
+		if (count == 0)
+			return;
+
+		if (this.dedup != null) {
+			this.dedup.decryptAll(this.decryptor, this.serials, this.encrypted, this.decrypted, this.wellFormed, count);
+		} else {
+			// Malformed rows are decrypted as zeroes to keep the batch contiguous, then ignored
+			for (int i = 0; i < count; i++) {
+				if (!this.wellFormed[i]) {
+					this.serials[i] = 0;
+					this.encrypted[i] = 0;
+				}
+			}
+			this.decryptor.decryptAll(this.serials, this.encrypted, this.decrypted, count);
+		}
+
+		StringBuilder line = new StringBuilder(128);
+		for (int i = 0; i < count; i++) {
+			line.setLength(0);
+			if (this.malformed[i] != null) {
+				this.stats.malformed++;
+				appendMalformed(line, this.malformed[i]);
+			} else {
+				this.stats.count(this.decrypted[i]);
+				appendResult(line, this.serials[i], this.encrypted[i], this.decrypted[i]);
+			}
+			this.out.append(line);
+		}
+		this.rows = 0;
+
+		XValAuditStats snapshot = new XValAuditStats();
+		snapshot.add(this.stats);
+		this.published = snapshot;
+	}
+
+	private void begin() throws IOException {
+		if (this.format == Format.JSON)
+			this.out.write('[');
+	}
+
+	private void end() throws IOException {
+		if (this.format == Format.JSON)
+			this.out.write(this.first ? "]\n" : "\n]\n");
+	}
+
+	private void appendResult(StringBuilder line, long serial, long xval, long value) {
+		String result = XVal.isClean(value) ? "clean" : XVal.isValidPair(value) ? "flagged" : "invalid";
+		String flags = SecdataFlags.describe(value);
+
+		char[] digits = new char[12];
+		for (int i = 11; i >= 0; i--) {
+			digits[i] = (char) ('0' + (int) (serial % 10));
+			serial /= 10;
+		}
+		switch (this.format) {
+		case TEXT:
+			HexCodec.encode(xval, line.append(digits).append("  "), true).append("  ").append(result);
+			for (int pad = result.length(); pad < 9; pad++)
+				line.append(' ');
+			line.append(flags).append('\n');
+			break;
+		case CSV:
+			HexCodec.encode(xval, line.append(digits).append(','), true).append(',').append(result).append(',').append(flags).append('\n');
+			break;
+		case JSON:
+			startJson(line).append("{\"serial\":\"").append(digits).append("\",\"xval\":\"");
+			HexCodec.encode(xval, line, true).append("\",\"result\":\"").append(result).append("\",\"flags\":");
+			quote(line, flags).append('}');
+			break;
+		}
+	}
+
+	private void appendMalformed(StringBuilder line, String row) {
+		switch (this.format) {
+		case TEXT:
+			line.append(row).append("  malformed\n");
+			break;
+		case CSV:
+			line.append(row).append(",malformed\n");
+			break;
+		case JSON:
+			quote(startJson(line).append("{\"row\":"), row).append(",\"result\":\"malformed\"}");
+			break;
+		}
+	}
+
+	/**
+	 * Separates JSON array elements.
+	 */
+	private StringBuilder startJson(StringBuilder line) {
+		line.append(this.first ? "\n" : ",\n");
+		this.first = false;
+		return line;
+	}
+
+	/**
+	 * Starts a daemon thread that rewrites a one-line summary on standard error.
+	 */
+	private Thread startSummary() {
+		final long start = System.nanoTime();
+		Thread summary = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(SUMMARY_INTERVAL);
+						printSummary(start, false);
+					}
+				} catch (InterruptedException e) {
+					// Finished
+				}
+			}
+		}, "XValCheck-summary");
+		summary.setDaemon(true);
+		summary.start();
+		return summary;
+	}
+
+	private void printSummary(long start, boolean last) {
+		XValAuditStats stats = this.published;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long rate = seconds > 0 ? (long) (stats.getRows() / seconds) : 0;
+		String summary = stats + ", " + rate + " pairs/s";
+		if (last)
+			System.err.println("\r" + summary);
+		else
+			System.err.print("\r" + summary);
+	}
+
+	private static StringBuilder quote(StringBuilder out, String s) {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				out.append('\\').append(c);
+			else if (c < 0x20)
+				out.append("\\u00").append(HexCodec.LOWER[c >> 4]).append(HexCodec.LOWER[c & 0xF]);
+			else
+				out.append(c);
+		}
+		return out.append('"');
+	}
+}
@@ -0,0 +1,346 @@
+package org.cooltrainer.xval;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The XValGenerate class writes made-up serial number / 'X' value pairs
+ * with known outcomes, for load-testing anything that checks them.
+ *
+ * <pre>
+ * java org.cooltrainer.xval.XValGenerate [options] -o file
+ *
+ *   -n rows      Pairs to write (default: 1000000)
+ *   -t threads   Worker threads (default: one per processor)
+ *   -r seed      Random seed; the same seed and options always give the same file (default: 0)
+ *   -c mix       Outcomes, as clean:weight,flagged:weight,invalid:weight (default: clean:90,flagged:9,invalid:1)
+ *   -m mix       Flags of flagged pairs, as mask:weight,... (default: each known flag alone, equally)
+ *   -F mix       Factory codes, as code:weight,... (default: 2,3,5,6,7 equally)
+ *   -y mix       Manufacturing years, as year:weight,... (default: 2005 through 2013 equally)
+ *   -w from-to   Manufacturing weeks (default: 1-52)
+ *   -k           Add each pair's decrypted 'X' value as a third column
+ *
+ * Output rows:  serial,xval[,decrypted]   (fixed width, uppercase hexadecimal)
+ * </pre>
+ *
+ * A mix is a comma-separated list of values, each with an optional weight
+ * (default 1); masks may be given in hexadecimal as 0x..., up to
+ * 0xFFFFFFFF, and must not be 0. Invalid pairs decrypt to an 'X' value
+ * with both words set, so they fail {@link XVal#isValidPair()} for certain.
+ *
+ * Every row is the same length, so each chunk of rows has a fixed place in
+ * the file. Workers generate and encrypt chunks independently with
+ * {@link XValKernel#encrypt(long, long)} and write each straight to its
+ * place with a positional write, without waiting on each other.
+ *
+ * Exits with 0 once every row is written, 1 on a write failure and 2 on
+ * bad arguments.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValGenerate {
+	/** Rows a worker generates and writes at a time */
+	private static final int CHUNK = 16384;
+
+	private static final String[] OUTCOMES = { "clean", "flagged", "invalid" };
+	private static final int CLEAN = 0, FLAGGED = 1;
+
+	private static final int[] FACTORIES = { 2, 3, 5, 6, 7 };
+
+	private final long rows;
+	private final long seed;
+	private final Mix outcomes, flags, factories, years;
+	private final int firstWeek, lastWeek;
+	private final int rowLength;
+
+	private XValGenerate(long rows, long seed, Mix outcomes, Mix flags, Mix factories, Mix years, int firstWeek, int lastWeek, boolean decrypted) {
+		this.rows = rows;
+		this.seed = seed;
+		this.outcomes = outcomes;
+		this.flags = flags;
+		this.factories = factories;
+		this.years = years;
+		this.firstWeek = firstWeek;
+		this.lastWeek = lastWeek;
+		this.rowLength = decrypted ? 12 + 1 + 16 + 1 + 16 + 1 : 12 + 1 + 16 + 1;
+	}
+
+	public static void main(String[] args) {
+		long rows = 1000000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = 0;
+		Mix outcomes, flags, factories, years;
+		int firstWeek = 1, lastWeek = 52;
+		boolean decrypted = false;
+		String output = null;
+
+		try {
+			outcomes = Mix.parse("clean:90,flagged:9,invalid:1", OUTCOMES);
+			flags = Mix.parse("0x1,0x2,0x4,0x8,0x10,0x20,0x40,0x80,0x100,0x200,0x400,0x800", null);
+			factories = Mix.parse("2,3,5,6,7", null);
+			years = Mix.parse("2005,2006,2007,2008,2009,2010,2011,2012,2013", null);
+
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-n")) {
+					rows = Long.parseLong(args[++i]);
+				} else if (arg.equals("-t")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-r")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (arg.equals("-c")) {
+					outcomes = Mix.parse(args[++i], OUTCOMES);
+				} else if (arg.equals("-m")) {
+					flags = Mix.parse(args[++i], null);
+				} else if (arg.equals("-F")) {
+					factories = Mix.parse(args[++i], null);
+				} else if (arg.equals("-y")) {
+					years = Mix.parse(args[++i], null);
+				} else if (arg.equals("-w")) {
+					String[] range = args[++i].split("-");
+					firstWeek = Integer.parseInt(range[0].trim());
+					lastWeek = Integer.parseInt(range[range.length - 1].trim());
+				} else if (arg.equals("-k")) {
+					decrypted = true;
+				} else if (arg.equals("-o")) {
+					output = args[++i];
+				} else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+			if (output == null)
+				throw new IllegalArgumentException("An output file is needed");
+			if (rows < 0)
+				throw new IllegalArgumentException("Row count can't be negative");
+			if (threads < 1)
+				throw new IllegalArgumentException("At least one thread is needed");
+			if (firstWeek < 1 || lastWeek > 53 || firstWeek > lastWeek)
+				throw new IllegalArgumentException("Weeks must be within 1-53");
+			for (int mask : flags.values) {
+				if (mask == 0)
+					throw new IllegalArgumentException("Flag mask 0 would make a flagged pair clean");
+			}
+			for (int factory : factories.values) {
+				if (indexOf(FACTORIES, factory) < 0)
+					throw new IllegalArgumentException("Unknown factory code " + factory);
+			}
+			for (int year : years.values) {
+				if (year < 2005 || year > 2014)
+					throw new IllegalArgumentException("Years must be within 2005-2014");
+			}
+		} catch (RuntimeException e) {
+			// Missing option values, bad numbers and bad mixes all end up here
+			System.err.println("Usage: XValGenerate [-n rows] [-t threads] [-r seed] [-c mix] [-m mix] [-F mix] [-y mix] [-w from-to] [-k] -o file");
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.exit(2);
+			return;
+		}
+
+		XValGenerate generate = new XValGenerate(rows, seed, outcomes, flags, factories, years, firstWeek, lastWeek, decrypted);
+		XValBatchDecryptor pool = new XValBatchDecryptor(threads);
+		int status = 0;
+		try {
+			long start = System.nanoTime();
+			generate.write(output, pool);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long bytes = rows * generate.rowLength;
+			System.err.println(rows + " rows, " + bytes + " bytes in " + String.format("%.2f", seconds) + " s, "
+					+ (seconds > 0 ? (long) (rows / seconds) : 0) + " rows/s");
+		} catch (IOException e) {
+			System.err.println("XValGenerate: " + e.getMessage());
+			status = 1;
+		} catch (XValException e) {
+			System.err.println("XValGenerate: " + (e.getCause() != null ? e.getCause() : e.getMessage()));
+			status = 1;
+		} finally {
+			pool.shutdown();
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Writes every row to a file, replacing anything already in it.
+	 *
+	 * @param output			File to write
+	 * @param pool				Decryptor whose worker threads to generate on; not shut down by this method
+	 * @throws IOException		If the file can't be opened or sized
+	 * @throws XValException	If a worker failed to write
+	 */
+	void write(String output, XValBatchDecryptor pool) throws IOException, XValException {
+		RandomAccessFile file = new RandomAccessFile(output, "rw");
+		try {
+			file.setLength(this.rows * this.rowLength);
+			FileChannel channel = file.getChannel();
+			AtomicLong next = new AtomicLong();
+			long chunks = (this.rows + CHUNK - 1) / CHUNK;
+			int threads = (int) Math.min(pool.getThreads(), Math.max(1, chunks));
+			List<Future<Object>> pending = new ArrayList<Future<Object>>(threads);
+			for (int i = 0; i < threads; i++)
+				pending.add(pool.submit(new Worker(channel, next, chunks)));
+			XValBatchDecryptor.await(pending);
+			channel.force(false);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Generates one chunk of rows into a buffer. Each chunk has its own
+	 * random sequence, so the file doesn't depend on how many threads wrote it.
+	 *
+	 * @return					Bytes generated
+	 */
+	private int generate(long chunk, XValKernel kernel, ByteBuffer out) {
+		Random random = new Random(this.seed + chunk * 0x9E3779B97F4A7C15L);
+		int count = (int) Math.min(CHUNK, this.rows - chunk * CHUNK);
+		int weeks = this.lastWeek - this.firstWeek + 1;
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			// line, weekly number, year digit, week, factory
+			long serial = random.nextInt(10) * 100000000000L
+					+ random.nextInt(1000000) * 100000L
+					+ (this.years.pick(random) % 10) * 10000L
+					+ (this.firstWeek + random.nextInt(weeks)) * 100L
+					+ this.factories.pick(random);
+
+			long value;
+			int outcome = this.outcomes.pick(random);
+			if (outcome == CLEAN)
+				value = 0;
+			else if (outcome == FLAGGED)
+				value = this.flags.pick(random) & 0xFFFFFFFFL;
+			else
+				value = random.nextLong() | (1L << 32) | 1L;
+
+			long encrypted = kernel.encrypt(serial, value);
+			for (int d = 11; d >= 0; d--) {
+				out.put(pos + d, (byte) ('0' + (int) (serial % 10)));
+				serial /= 10;
+			}
+			pos += 12;
+			out.put(pos++, (byte) ',');
+			HexCodec.encode(encrypted, out, pos, true);
+			pos += 16;
+			if (this.rowLength > 30) {
+				out.put(pos++, (byte) ',');
+				HexCodec.encode(value, out, pos, true);
+				pos += 16;
+			}
+			out.put(pos++, (byte) '\n');
+		}
+		return pos;
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == value)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Claims chunks until none are left, writing each at its own offset.
+	 */
+	private class Worker implements Callable<Object> {
+		private final FileChannel channel;
+		private final AtomicLong next;
+		private final long chunks;
+
+		Worker(FileChannel channel, AtomicLong next, long chunks) {
+			this.channel = channel;
+			this.next = next;
+			this.chunks = chunks;
+		}
+
+		public Object call() throws IOException {
+			XValKernel kernel = XValKernel.forCurrentThread();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK * rowLength);
+
+			long chunk;
+			while ((chunk = this.next.getAndIncrement()) < this.chunks) {
+				int length = generate(chunk, kernel, buffer);
+				buffer.clear();
+				buffer.limit(length);
+				long position = chunk * CHUNK * rowLength;
+				while (buffer.hasRemaining())
+					position += this.channel.write(buffer, position);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Picks values at random in proportion to their weights.
+	 */
+	private static class Mix {
+		final int[] values;
+		private final int[] cumulative;
+
+		private Mix(int[] values, int[] weights) {
+			this.values = values;
+			this.cumulative = new int[weights.length];
+			int total = 0;
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] < 0)
+					throw new IllegalArgumentException("Weights can't be negative");
+				total += weights[i];
+				this.cumulative[i] = total;
+			}
+			if (total <= 0)
+				throw new IllegalArgumentException("A mix needs some weight");
+		}
+
+		/**
+		 * @param spec			value[:weight],...
+		 * @param names			Names standing for values 0, 1, 2... or null for numeric values
+		 */
+		static Mix parse(String spec, String[] names) {
+			String[] items = spec.split(",");
+			int[] values = new int[items.length];
+			int[] weights = new int[items.length];
+			for (int i = 0; i < items.length; i++) {
+				String[] parts = items[i].split(":");
+				String value = parts[0].trim();
+				if (names == null) {
+					// Masks up to 0xFFFFFFFF, so as a long and then narrowed
+					long decoded = Long.decode(value).longValue();
+					if (decoded < Integer.MIN_VALUE || decoded > 0xFFFFFFFFL)
+						throw new IllegalArgumentException("Value out of range: " + value);
+					values[i] = (int) decoded;
+				} else {
+					values[i] = indexOf(names, value);
+					if (values[i] < 0)
+						throw new IllegalArgumentException("Unknown value " + value);
+				}
+				weights[i] = (parts.length > 1) ? Integer.parseInt(parts[1].trim()) : 1;
+			}
+			return new Mix(values, weights);
+		}
+
+		int pick(Random random) {
+			int r = random.nextInt(this.cumulative[this.cumulative.length - 1]);
+			int i = 0;
+			while (r >= this.cumulative[i])
+				i++;
+			return this.values[i];
+		}
+
+		private static int indexOf(String[] names, String name) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equalsIgnoreCase(name))
+					return i;
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package org.cooltrainer.xval;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The XValShard class audits one large file with several worker processes,
+ * for inputs big enough that a single JVM runs out of memory bandwidth or
+ * spends its time collecting garbage.
+ *
+ * <pre>
+ * java org.cooltrainer.xval.XValShard [options] input output
+ *
+ *   -p processes Worker processes (default: one per four processors, at least one)
+ *   -t threads   Decryption threads per worker (default: processors / processes)
+ *   -J option    Pass an option to each worker JVM, such as -J -Xmx512m; may be repeated
+ *   -d pairs     Reuse the results of repeated pairs, with filters sized for this many distinct pairs in all
+ * </pre>
+ *
+ * The input is split into byte ranges of about equal size, each moved
+ * forward to the start of a line. Every range is audited by its own
+ * worker, a JVM running this class on the same classpath, with
+ * {@link XValFileAudit#audit(FileChannel, long, long, java.nio.channels.WritableByteChannel)}.
+ * Each worker writes its result rows to a part file beside the output
+ * and prints its totals. What each worker prints is read as it goes, on a
+ * thread of its own, so no worker stalls on a full pipe while waiting its
+ * turn. Once every worker has finished, the parts are joined in input
+ * order with FileChannel.transferTo, and the totals are added up.
+ *
+ * With -d, each worker screens its range through its own {@link XValDedup},
+ * sized for its share of the pairs, so repeats are caught within a range
+ * but not across ranges.
+ *
+ * Workers checkpoint their progress beside their part files (see
+ * {@link XValFileAudit#setCheckpoint(File)}). If a run fails or is killed,
+ * the parts and checkpoints are kept, and running it again with the same
+ * input and process count carries each worker on from its last checkpoint.
+ * They're deleted once the output is complete. A worker quits when its
+ * coordinator goes away, so two runs never write the same part.
+ *
+ * Input and output rows are as for {@link XValFileAudit}. Exits with 0
+ * once every row is written, 1 if reading, writing or a worker failed,
+ * and 2 on bad arguments.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValShard {
+	/** Marks a worker's command line */
+	private static final String WORKER = "--worker";
+
+	/** Bytes scanned at a time when moving a split to the next line */
+	private static final int SCAN = 4096;
+
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(WORKER)) {
+			System.exit(worker(args));
+			return;
+		}
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		int processes = Math.max(1, processors / 4);
+		int threads = 0;
+		long dedupPairs = 0;
+		List<String> jvmOptions = new ArrayList<String>();
+		List<String> files = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-p")) {
+					processes = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-t")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-J")) {
+					jvmOptions.add(args[++i]);
+				} else if (arg.equals("-d")) {
+					dedupPairs = Long.parseLong(args[++i]);
+				} else if (arg.startsWith("-") && arg.length() > 1) {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				} else {
+					files.add(arg);
+				}
+			}
+			if (files.size() != 2)
+				throw new IllegalArgumentException("An input and an output file are needed");
+			if (processes < 1)
+				throw new IllegalArgumentException("At least one process is needed");
+			if (threads < 0)
+				throw new IllegalArgumentException("Thread count can't be negative");
+			if (dedupPairs < 0)
+				throw new IllegalArgumentException("Dedup pair count can't be negative");
+		} catch (RuntimeException e) {
+			// Missing option values and bad numbers end up here
+			System.err.println("Usage: XValShard [-p processes] [-t threads] [-J jvm-option] [-d pairs] input output");
+			System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+			System.exit(2);
+			return;
+		}
+		if (threads == 0)
+			threads = Math.max(1, processors / processes);
+
+		int status = 0;
+		try {
+			long start = System.nanoTime();
+			long[] dedup = new long[2];
+			XValAuditStats stats = run(new File(files.get(0)), new File(files.get(1)), processes, threads, jvmOptions, dedupPairs, dedup);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.err.println(stats + ", " + (seconds > 0 ? (long) (stats.getRows() / seconds) : 0) + " pairs/s");
+			if (dedupPairs > 0)
+				System.err.println(dedup[0] + " pairs screened: " + dedup[1] + " repeats reused ("
+						+ (dedup[0] > 0 ? Math.round(dedup[1] * 1000.0 / dedup[0]) / 10.0 : 0) + "% of decryption saved)");
+		} catch (IOException e) {
+			System.err.println("XValShard: " + e.getMessage());
+			status = 1;
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Audits a file across worker processes and joins their results.
+	 *
+	 * @param input				File of serial number / 'X' value rows
+	 * @param output			File to write result rows to; replaced if it exists
+	 * @param processes			Worker processes; fewer are used for a small file
+	 * @param threads			Decryption threads per worker
+	 * @param jvmOptions		Options for each worker JVM
+	 * @param dedupPairs		Distinct pairs expected in the whole file, or 0 to decrypt every pair
+	 * @param dedup				Receives the pairs screened and the repeats reused, added up over the workers
+	 * @return					Totals for the whole file
+	 * @throws IOException		If the file can't be read or written, or a worker failed
+	 */
+	static XValAuditStats run(File input, File output, int processes, int threads, List<String> jvmOptions, long dedupPairs, long[] dedup) throws IOException {
+		long[] splits = split(input, processes);
+		int shards = splits.length - 1;
+		long workerPairs = (dedupPairs + shards - 1) / Math.max(1, shards);
+
+		File[] parts = new File[shards];
+		Process[] workers = new Process[shards];
+		WorkerOutput[] outputs = new WorkerOutput[shards];
+		XValAuditStats stats = new XValAuditStats();
+		try {
+			for (int i = 0; i < shards; i++) {
+				parts[i] = new File(output.getPath() + ".part" + i);
+				workers[i] = start(input, splits[i], splits[i + 1], parts[i], threads, jvmOptions, workerPairs);
+				outputs[i] = new WorkerOutput(workers[i]);
+				outputs[i].start();
+			}
+			IOException failure = null;
+			for (int i = 0; i < shards; i++) {
+				try {
+					stats.add(finish(workers[i], outputs[i], i, dedup));
+				} catch (IOException e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+			if (failure != null)
+				throw failure;
+
+			join(parts, output);
+		} finally {
+			for (int i = 0; i < shards; i++) {
+				if (workers[i] != null)
+					workers[i].destroy();
+			}
+		}
+
+		// Kept until now, so a run that fails anywhere above can be resumed
+		for (int i = 0; i < shards; i++) {
+			parts[i].delete();
+			checkpointOf(parts[i]).delete();
+		}
+		return stats;
+	}
+
+	/**
+	 * @return					Checkpoint file of a part file
+	 */
+	private static File checkpointOf(File part) {
+		return new File(part.getPath() + ".checkpoint");
+	}
+
+	/**
+	 * Splits a file into ranges of about equal size that each start at the start of a line.
+	 *
+	 * @return					Range boundaries, from 0 to the file size; ranges are never empty
+	 */
+	private static long[] split(File input, int processes) throws IOException {
+		FileInputStream in = new FileInputStream(input);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			List<Long> splits = new ArrayList<Long>();
+			splits.add(Long.valueOf(0));
+			ByteBuffer buffer = ByteBuffer.allocate(SCAN);
+			for (int i = 1; i < processes; i++) {
+				long split = nextLine(channel, size * i / processes, size, buffer);
+				if (split > splits.get(splits.size() - 1).longValue() && split < size)
+					splits.add(Long.valueOf(split));
+			}
+			splits.add(Long.valueOf(size));
+
+			long[] result = new long[splits.size()];
+			for (int i = 0; i < result.length; i++)
+				result[i] = splits.get(i).longValue();
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return					Offset just past the first line break at or after position, or size if there is none
+	 */
+	private static long nextLine(FileChannel channel, long position, long size, ByteBuffer buffer) throws IOException {
+		// A split at 0 or just after a line break is already at the start of a line
+		if (position == 0)
+			return 0;
+		position--;
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Starts a worker JVM on one range of the input.
+	 */
+	private static Process start(File input, long from, long to, File part, int threads, List<String> jvmOptions, long dedupPairs) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(XValShard.class.getName());
+		command.add(WORKER);
+		command.add(input.getPath());
+		command.add(Long.toString(from));
+		command.add(Long.toString(to));
+		command.add(part.getPath());
+		command.add(Integer.toString(threads));
+		command.add(Long.toString(dedupPairs));
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		return builder.start();
+	}
+
+	/**
+	 * Reads everything a worker prints, as it prints it, keeping its totals
+	 * and any other messages for when it has finished.
+	 */
+	private static class WorkerOutput extends Thread {
+		private final Process worker;
+		String totals, dedupTotals;
+		final StringBuilder messages = new StringBuilder();
+		IOException failure;
+
+		WorkerOutput(Process worker) {
+			super("XValShard-output");
+			this.worker = worker;
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(this.worker.getInputStream(), "UTF-8"));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.startsWith("totals "))
+							this.totals = line;
+						else if (line.startsWith("dedup "))
+							this.dedupTotals = line;
+						else
+							this.messages.append(line).append('\n');
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				this.failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Waits for a worker and the thread reading its output, and parses the totals it printed.
+	 *
+	 * @param dedup				Has the worker's dedup counts added to it
+	 * @throws IOException		If the worker failed
+	 */
+	private static XValAuditStats finish(Process worker, WorkerOutput output, int shard, long[] dedup) throws IOException {
+		int exit;
+		try {
+			exit = worker.waitFor();
+			output.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for shard " + shard);
+		}
+		if (output.failure != null)
+			throw output.failure;
+
+		String totals = output.totals;
+		String dedupTotals = output.dedupTotals;
+		StringBuilder messages = output.messages;
+		if (exit != 0 || totals == null)
+			throw new IOException("Shard " + shard + " failed with exit status " + exit + (messages.length() > 0 ? ":\n" + messages : ""));
+
+		String[] fields = totals.split(" ");
+		XValAuditStats stats = new XValAuditStats();
+		stats.clean = Long.parseLong(fields[1]);
+		stats.flagged = Long.parseLong(fields[2]);
+		stats.invalid = Long.parseLong(fields[3]);
+		stats.malformed = Long.parseLong(fields[4]);
+		if (dedupTotals != null) {
+			fields = dedupTotals.split(" ");
+			dedup[0] += Long.parseLong(fields[1]);
+			dedup[1] += Long.parseLong(fields[2]);
+		}
+		return stats;
+	}
+
+	/**
+	 * Joins part files into one output, in order, without copying them through the heap.
+	 */
+	private static void join(File[] parts, File output) throws IOException {
+		FileOutputStream out = new FileOutputStream(output);
+		try {
+			FileChannel target = out.getChannel();
+			for (File part : parts) {
+				FileInputStream in = new FileInputStream(part);
+				try {
+					FileChannel source = in.getChannel();
+					long size = source.size();
+					long position = 0;
+					while (position < size)
+						position += source.transferTo(position, size - position, target);
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Audits one range, resuming from its checkpoint, and prints its
+	 * totals: "totals clean flagged invalid malformed", after
+	 * "dedup screened reused" if it screened pairs.
+	 *
+	 * @param args				--worker input from to part threads dedup-pairs
+	 * @return					Exit status: 0 on success, 1 on failure
+	 */
+	private static int worker(String[] args) {
+		watchCoordinator();
+		File part = new File(args[4]);
+		XValBatchDecryptor decryptor = new XValBatchDecryptor(Integer.parseInt(args[5]));
+		try {
+			XValFileAudit audit = new XValFileAudit(decryptor);
+			audit.setCheckpoint(checkpointOf(part));
+			long dedupPairs = Long.parseLong(args[6]);
+			XValDedup dedup = (dedupPairs > 0) ? new XValDedup(dedupPairs, XValDedup.DEFAULT_FALSE_POSITIVE_RATE) : null;
+			audit.setDedup(dedup);
+			XValAuditStats stats = audit.audit(new File(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3]), part);
+			if (dedup != null)
+				System.out.println("dedup " + dedup.getChecked() + " " + dedup.getRepeats());
+			System.out.println("totals " + stats.clean + " " + stats.flagged + " " + stats.invalid + " " + stats.malformed);
+			return 0;
+		} catch (IOException e) {
+			System.out.println("XValShard worker: " + e.getMessage());
+			return 1;
+		} finally {
+			decryptor.shutdown();
+		}
+	}
+
+	/**
+	 * Ends the worker once its standard input closes, which happens when the
+	 * coordinator exits for any reason. Its last checkpoint is already on disk.
+	 */
+	private static void watchCoordinator() {
+		Thread watcher = new Thread("XValShard coordinator watch") {
+			public void run() {
+				try {
+					while (System.in.read() >= 0)
+						;
+				} catch (IOException e) {
+					// Gone either way
+				}
+				Runtime.getRuntime().halt(1);
+			}
+		};
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+}
@@ -0,0 +1,236 @@
+package org.cooltrainer.xval;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the check service: parsing request bodies into
+ * Maps, Lists and Strings, and quoting Strings for responses.
+ *
+ * Numbers are returned as their text, so a serial number sent as a bare
+ * number reads the same as one sent as a string. true, false and null
+ * become Boolean.TRUE, Boolean.FALSE and null. Arrays and objects may be
+ * nested at most 32 deep.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+final class Json {
+	/** Deepest nesting of arrays and objects accepted, far more than any request needs */
+	private static final int MAX_DEPTH = 32;
+
+	private final String text;
+	private int at, depth;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param text				JSON document
+	 * @return					The document's value
+	 * @throws XValException	If the document isn't well-formed JSON
+	 */
+	static Object parse(String text) throws XValException {
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipSpace();
+		if (json.at != text.length())
+			throw json.error("Unexpected text after JSON value");
+		return value;
+	}
+
+	/**
+	 * Appends a String as a quoted JSON string.
+	 *
+	 * @param out				Where to append
+	 * @param s					String to quote
+	 * @return					out
+	 */
+	static StringBuilder quote(StringBuilder out, String s) {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		return out.append('"');
+	}
+
+	private Object value() throws XValException {
+		skipSpace();
+		if (this.at == this.text.length())
+			throw error("Unexpected end of JSON");
+
+		char c = this.text.charAt(this.at);
+		switch (c) {
+		case '{':
+			nest();
+			Map<String, Object> map = object();
+			this.depth--;
+			return map;
+		case '[':
+			nest();
+			List<Object> list = array();
+			this.depth--;
+			return list;
+		case '"':
+			return string();
+		default:
+			if (this.text.startsWith("true", this.at)) {
+				this.at += 4;
+				return Boolean.TRUE;
+			}
+			if (this.text.startsWith("false", this.at)) {
+				this.at += 5;
+				return Boolean.FALSE;
+			}
+			if (this.text.startsWith("null", this.at)) {
+				this.at += 4;
+				return null;
+			}
+			return number();
+		}
+	}
+
+	/**
+	 * Enters an array or object, refusing documents nested deeply enough to exhaust the stack.
+	 */
+	private void nest() throws XValException {
+		if (++this.depth > MAX_DEPTH)
+			throw error("JSON nested more than " + MAX_DEPTH + " deep");
+	}
+
+	private Map<String, Object> object() throws XValException {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		this.at++;
+		skipSpace();
+		if (consume('}'))
+			return map;
+		do {
+			skipSpace();
+			if (this.at == this.text.length() || this.text.charAt(this.at) != '"')
+				throw error("Expected a quoted key");
+			String key = string();
+			skipSpace();
+			if (!consume(':'))
+				throw error("Expected ':'");
+			map.put(key, value());
+			skipSpace();
+		} while (consume(','));
+		if (!consume('}'))
+			throw error("Expected ',' or '}'");
+		return map;
+	}
+
+	private List<Object> array() throws XValException {
+		List<Object> list = new ArrayList<Object>();
+		this.at++;
+		skipSpace();
+		if (consume(']'))
+			return list;
+		do {
+			list.add(value());
+			skipSpace();
+		} while (consume(','));
+		if (!consume(']'))
+			throw error("Expected ',' or ']'");
+		return list;
+	}
+
+	private String string() throws XValException {
+		StringBuilder s = new StringBuilder();
+		this.at++;
+		while (this.at < this.text.length()) {
+			char c = this.text.charAt(this.at++);
+			if (c == '"')
+				return s.toString();
+			if (c != '\\') {
+				s.append(c);
+				continue;
+			}
+			if (this.at == this.text.length())
+				break;
+			c = this.text.charAt(this.at++);
+			switch (c) {
+			case 'b':
+				s.append('\b');
+				break;
+			case 'f':
+				s.append('\f');
+				break;
+			case 'n':
+				s.append('\n');
+				break;
+			case 'r':
+				s.append('\r');
+				break;
+			case 't':
+				s.append('\t');
+				break;
+			case 'u':
+				if (this.at + 4 > this.text.length())
+					throw error("Truncated \\u escape");
+				try {
+					s.append((char) Integer.parseInt(this.text.substring(this.at, this.at + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("Bad \\u escape");
+				}
+				this.at += 4;
+				break;
+			default:
+				s.append(c);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	private String number() throws XValException {
+		int start = this.at;
+		while (this.at < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.at)) >= 0)
+			this.at++;
+		if (this.at == start)
+			throw error("Unexpected character '" + this.text.charAt(this.at) + "'");
+		return this.text.substring(start, this.at);
+	}
+
+	private boolean consume(char c) {
+		if (this.at < this.text.length() && this.text.charAt(this.at) == c) {
+			this.at++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpace() {
+		while (this.at < this.text.length() && Character.isWhitespace(this.text.charAt(this.at)))
+			this.at++;
+	}
+
+	private XValException error(String message) {
+		return new XValException(message + " at offset " + this.at);
+	}
+}
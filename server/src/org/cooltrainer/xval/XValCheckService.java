@@ -0,0 +1,198 @@
+package org.cooltrainer.xval;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The XValCheckService class answers check requests with JSON, independent
+ * of how the requests arrive.
+ *
+ * Single checks decrypt on the calling thread with its own {@link XValKernel},
+ * so no crypto state is shared or set up per request. Batches go to an
+ * {@link XValBatchDecryptor}, which spreads large ones over its workers.
+ *
+ * <pre>
+ * Request:   {"serial": "112345674205", "xval": "ABE5-03C6-FF66-2168"}
+ * Response:  {"serial": "112345674205", "xval": "ABE503C6FF662168", "validPair": true,
+ *             "clean": true, "flagMask": 0, "flags": "Secdata clean",
+ *             "mfgDate": "2007-10-14", "factory": "China"}
+ * </pre>
+ *
+ * A batch is an array of requests and gets an array of responses in the
+ * same order. A request that can't be checked gets {"error": "..."} in its place.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+class XValCheckService {
+	/** Largest batch accepted in one request */
+	static final int MAX_BATCH = 100000;
+
+	private final XValBatchDecryptor decryptor;
+	private final LatencyHistogram checkLatency = new LatencyHistogram();
+	private final LatencyHistogram batchLatency = new LatencyHistogram();
+
+	/**
+	 * @param decryptor			Decryptor to run batches on; not shut down by this class
+	 */
+	XValCheckService(XValBatchDecryptor decryptor) {
+		this.decryptor = decryptor;
+	}
+
+	/**
+	 * Checks one pair.
+	 *
+	 * @param serial			Console serial number
+	 * @param xval				Encrypted 'X' value
+	 * @return					JSON response
+	 * @throws XValException	If either value is malformed
+	 */
+	String check(String serial, String xval) throws XValException {
+		long start = System.nanoTime();
+		long[] encrypted = new long[1];
+		long packed = parse(serial, xval, encrypted, 0);
+		long decrypted = XValKernel.forCurrentThread().decrypt(packed, encrypted[0]);
+		String response = appendResult(new StringBuilder(256), packed, encrypted[0], decrypted).toString();
+		this.checkLatency.record(System.nanoTime() - start);
+		return response;
+	}
+
+	/**
+	 * Checks one pair sent as a JSON object.
+	 *
+	 * @param body				JSON request
+	 * @return					JSON response
+	 * @throws XValException	If the request is malformed
+	 */
+	String check(String body) throws XValException {
+		Object request = Json.parse(body);
+		if (!(request instanceof Map<?, ?>))
+			throw new XValException("Expected a JSON object");
+		Map<?, ?> map = (Map<?, ?>) request;
+		return check(field(map, "serial"), field(map, "xval"));
+	}
+
+	/**
+	 * Checks an array of pairs.
+	 *
+	 * @param body				JSON array of requests
+	 * @return					JSON array of responses
+	 * @throws XValException	If the body isn't a JSON array or is too long
+	 */
+	String batch(String body) throws XValException {
+		long start = System.nanoTime();
+		Object parsed = Json.parse(body);
+		if (!(parsed instanceof List<?>))
+			throw new XValException("Expected a JSON array");
+		List<?> requests = (List<?>) parsed;
+		int count = requests.size();
+		if (count > MAX_BATCH)
+			throw new XValException("Batches are limited to " + MAX_BATCH + " pairs");
+
+		long[] serials = new long[count];
+		long[] encrypted = new long[count];
+		long[] decrypted = new long[count];
+		String[] errors = new String[count];
+		for (int i = 0; i < count; i++) {
+			try {
+				Object request = requests.get(i);
+				if (!(request instanceof Map<?, ?>))
+					throw new XValException("Expected a JSON object");
+				Map<?, ?> map = (Map<?, ?>) request;
+				serials[i] = parse(field(map, "serial"), field(map, "xval"), encrypted, i);
+			} catch (XValException e) {
+				// Decrypted as zeroes to keep the batch contiguous, then replaced by the error
+				errors[i] = e.getMessage();
+				serials[i] = 0;
+				encrypted[i] = 0;
+			}
+		}
+		this.decryptor.decryptAll(serials, encrypted, decrypted, count);
+
+		StringBuilder out = new StringBuilder(count * 200 + 2).append('[');
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				out.append(',');
+			if (errors[i] != null)
+				appendError(out, errors[i]);
+			else
+				appendResult(out, serials[i], encrypted[i], decrypted[i]);
+		}
+		String response = out.append(']').toString();
+		this.batchLatency.record(System.nanoTime() - start);
+		return response;
+	}
+
+	/**
+	 * @return					JSON object of request counts and latency percentiles in microseconds
+	 */
+	String stats() {
+		StringBuilder out = new StringBuilder(256).append('{');
+		appendLatency(out.append("\"check\":"), this.checkLatency);
+		appendLatency(out.append(",\"batch\":"), this.batchLatency);
+		return out.append('}').toString();
+	}
+
+	/**
+	 * @param message			Why a request failed
+	 * @return					JSON error response
+	 */
+	static String error(String message) {
+		return appendError(new StringBuilder(), message).toString();
+	}
+
+	private static StringBuilder appendError(StringBuilder out, String message) {
+		return Json.quote(out.append("{\"error\":"), message).append('}');
+	}
+
+	private static void appendLatency(StringBuilder out, LatencyHistogram histogram) {
+		out.append("{\"count\":").append(histogram.getCount())
+				.append(",\"p50\":").append(histogram.getPercentile(50) / 1000)
+				.append(",\"p90\":").append(histogram.getPercentile(90) / 1000)
+				.append(",\"p99\":").append(histogram.getPercentile(99) / 1000)
+				.append(",\"p999\":").append(histogram.getPercentile(99.9) / 1000)
+				.append(",\"max\":").append(histogram.getMax() / 1000)
+				.append('}');
+	}
+
+	private static StringBuilder appendResult(StringBuilder out, long serial, long encrypted, long decrypted) {
+		char[] digits = new char[12];
+		for (int i = 11; i >= 0; i--) {
+			digits[i] = (char) ('0' + (int) (serial % 10));
+			serial /= 10;
+		}
+		String serialText = new String(digits);
+		Xbox360 xbox = new Xbox360(serialText);
+
+		HexCodec.encode(encrypted, out.append("{\"serial\":\"").append(digits).append("\",\"xval\":\""), true);
+		out.append("\",\"validPair\":").append(XVal.isValidPair(decrypted))
+				.append(",\"clean\":").append(XVal.isClean(decrypted))
+				.append(",\"flagMask\":").append(XVal.isValidPair(decrypted) ? (int) decrypted : 0)
+				.append(",\"flags\":");
+		Json.quote(out, SecdataFlags.describe(decrypted));
+		Json.quote(out.append(",\"mfgDate\":"), xbox.mfgDate());
+		Json.quote(out.append(",\"factory\":"), xbox.factoryName());
+		return out.append('}');
+	}
+
+	/**
+	 * Parses one request's values.
+	 *
+	 * @return					Packed serial number
+	 */
+	private static long parse(String serial, String xval, long[] encrypted, int index) throws XValException {
+		long packed = XValParser.parseSerial(serial);
+		if (packed == XValParser.INVALID_SERIAL)
+			throw new XValException("Serial number must be twelve numeric digits");
+		if (!XValParser.parseXVal(xval, encrypted, index))
+			throw new XValException("XVal must be sixteen hexadecimal digits");
+		return packed;
+	}
+
+	private static String field(Map<?, ?> map, String name) throws XValException {
+		Object value = map.get(name);
+		if (!(value instanceof String))
+			throw new XValException("Missing \"" + name + "\"");
+		return (String) value;
+	}
+}
@@ -0,0 +1,413 @@
+package org.cooltrainer.xval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The XValServer class serves X value checks over HTTP, so terminals on
+ * the LAN can check consoles without the Android app.
+ *
+ * <pre>
+ * GET  /check?serial=112345674205&amp;xval=ABE5-03C6-FF66-2168
+ * POST /check    {"serial": "...", "xval": "..."}
+ * POST /batch    [{"serial": "...", "xval": "..."}, ...]
+ * GET  /stats    request counts and latency percentiles, in microseconds
+ * </pre>
+ *
+ * See {@link XValCheckService} for the response format. Every connection is
+ * served by its own thread for as long as the client keeps it alive, so
+ * requests on one connection never wait on another and each thread's
+ * {@link XValKernel} is reused for every check it serves. On a JVM with
+ * virtual threads those threads are virtual, and otherwise they come from
+ * a cached pool. Connections past the limit are turned away with 503
+ * rather than queued.
+ *
+ * By default the server only listens on the loopback address.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValServer {
+	public static final int DEFAULT_PORT = 8360;
+
+	/** Largest request body accepted */
+	private static final int MAX_BODY = 16 << 20;
+
+	/** Largest request or header line accepted */
+	private static final int MAX_LINE = 8192;
+
+	/** Idle keep-alive connections are closed after this long */
+	private static final int IDLE_TIMEOUT_MS = 30000;
+
+	/** Longest wait before accepting again after accept() fails, such as when out of file descriptors */
+	private static final long MAX_ACCEPT_BACKOFF_NANOS = 1000000000L;
+
+	private static final String TAG = "XValServer";
+
+	private final ServerSocket socket;
+	private final XValBatchDecryptor decryptor;
+	private final XValCheckService service;
+	private final ExecutorService connections;
+	private final Semaphore connectionSlots;
+	private volatile boolean running;
+
+	/**
+	 * Binds a server without starting it.
+	 *
+	 * @param address			Address to listen on
+	 * @param port				Port to listen on, or 0 for any free port
+	 * @param maxConnections	Most connections served at once
+	 * @throws IOException		If the address can't be bound
+	 */
+	public XValServer(InetAddress address, int port, int maxConnections) throws IOException {
+		this.socket = new ServerSocket();
+		this.socket.setReuseAddress(true);
+		this.socket.bind(new InetSocketAddress(address, port), 1024);
+		this.decryptor = new XValBatchDecryptor();
+		this.service = new XValCheckService(this.decryptor);
+		this.connections = connectionExecutor();
+		this.connectionSlots = new Semaphore(maxConnections);
+	}
+
+	/**
+	 * Starts accepting connections on a background thread.
+	 */
+	public void start() {
+		this.running = true;
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "XValServer-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return					Port the server is listening on
+	 */
+	public int getPort() {
+		return this.socket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections and closes the listening socket.
+	 * Requests already being served are finished.
+	 *
+	 * @throws IOException		If the socket can't be closed
+	 */
+	public void stop() throws IOException {
+		this.running = false;
+		this.socket.close();
+		this.connections.shutdown();
+		this.decryptor.shutdown();
+	}
+
+	/**
+	 * Runs a server until the process is killed.
+	 *
+	 * @param args				[port [address]]; defaults to 8360 on the loopback address
+	 * @throws IOException		If the address can't be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		InetAddress address = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getByName("127.0.0.1");
+
+		XValWarmUp.run(null);
+		XValServer server = new XValServer(address, port, 1024);
+		System.err.println("Checking X values on http://" + address.getHostAddress() + ":" + server.getPort() + "/");
+		server.accept();
+	}
+
+	/**
+	 * @return					A virtual thread per connection where the JVM has them (Java 21),
+	 * 							or else a cached pool of daemon threads
+	 */
+	private static ExecutorService connectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool(new ConnectionFactory());
+		}
+	}
+
+	private void accept() {
+		this.running = true;
+		long backoff = 0;
+		while (this.running) {
+			final Socket client;
+			try {
+				client = this.socket.accept();
+				backoff = 0;
+			} catch (IOException e) {
+				if (!this.running)
+					return;
+				// The listening socket is still open, but a failure like running out of
+				// file descriptors keeps happening until connections close, so don't spin on it
+				backoff = (backoff == 0) ? 10000000 : Math.min(backoff * 2, MAX_ACCEPT_BACKOFF_NANOS);
+				CoolLog.w(TAG, "Can't accept a connection, retrying in " + (backoff / 1000000) + " ms", e);
+				LockSupport.parkNanos(backoff);
+				continue;
+			}
+
+			if (!this.connectionSlots.tryAcquire()) {
+				refuse(client);
+				continue;
+			}
+			this.connections.execute(new Runnable() {
+				public void run() {
+					try {
+						serve(client);
+					} finally {
+						connectionSlots.release();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Serves requests on one connection until the client closes it or asks to.
+	 */
+	private void serve(Socket client) {
+		try {
+			client.setTcpNoDelay(true);
+			client.setSoTimeout(IDLE_TIMEOUT_MS);
+			InputStream in = new BufferedInputStream(client.getInputStream(), 16384);
+			OutputStream out = new BufferedOutputStream(client.getOutputStream(), 16384);
+			StringBuilder line = new StringBuilder(256);
+
+			while (true) {
+				Request request = Request.read(in, line);
+				if (request == null)
+					return;
+
+				if (request.badRequest != null) {
+					respond(out, 400, XValCheckService.error(request.badRequest), false);
+					return;
+				}
+
+				handle(request, out);
+				if (!request.keepAlive)
+					return;
+			}
+		} catch (SocketException e) {
+			// Client went away
+		} catch (IOException e) {
+			// Timed out or broken connection; nothing to answer
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void handle(Request request, OutputStream out) throws IOException {
+		int status = 200;
+		String response;
+		try {
+			if ("/check".equals(request.path) && "GET".equals(request.method)) {
+				String serial = request.query.get("serial");
+				String xval = request.query.get("xval");
+				if (serial == null || xval == null)
+					throw new XValException("serial and xval are both needed");
+				response = this.service.check(serial, xval);
+			} else if ("/check".equals(request.path) && "POST".equals(request.method)) {
+				response = this.service.check(request.body);
+			} else if ("/batch".equals(request.path) && "POST".equals(request.method)) {
+				response = this.service.batch(request.body);
+			} else if ("/stats".equals(request.path) && "GET".equals(request.method)) {
+				response = this.service.stats();
+			} else {
+				status = 404;
+				response = XValCheckService.error("No such endpoint: " + request.method + " " + request.path);
+			}
+		} catch (XValException e) {
+			status = 400;
+			response = XValCheckService.error(e.getMessage());
+		}
+		respond(out, status, response, request.keepAlive);
+	}
+
+	private static void respond(OutputStream out, int status, String json, boolean keepAlive) throws IOException {
+		byte[] body = json.getBytes("UTF-8");
+		String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+				+ "Content-Type: application/json; charset=utf-8\r\n"
+				+ "Content-Length: " + body.length + "\r\n"
+				+ (keepAlive ? "" : "Connection: close\r\n")
+				+ "\r\n";
+		out.write(head.getBytes("US-ASCII"));
+		out.write(body);
+		out.flush();
+	}
+
+	private static void refuse(Socket client) {
+		try {
+			OutputStream out = client.getOutputStream();
+			respond(out, 503, XValCheckService.error("Too many connections"), false);
+		} catch (IOException e) {
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static String reason(int status) {
+		switch (status) {
+		case 200:
+			return "OK";
+		case 400:
+			return "Bad Request";
+		case 404:
+			return "Not Found";
+		default:
+			return "Service Unavailable";
+		}
+	}
+
+	/**
+	 * One parsed HTTP request.
+	 */
+	private static class Request {
+		String method, path, body = "";
+		Map<String, String> query = new HashMap<String, String>();
+		boolean keepAlive;
+		String badRequest;
+
+		/**
+		 * @return				The next request, or null if the client closed the connection
+		 */
+		static Request read(InputStream in, StringBuilder line) throws IOException {
+			// Tolerate blank lines between requests
+			String requestLine;
+			do {
+				requestLine = readLine(in, line);
+				if (requestLine == null)
+					return null;
+			} while (requestLine.length() == 0);
+
+			Request request = new Request();
+			String[] parts = requestLine.split(" ");
+			if (parts.length != 3) {
+				request.badRequest = "Malformed request line";
+				return request;
+			}
+			request.method = parts[0];
+			request.keepAlive = !"HTTP/1.0".equals(parts[2]);
+
+			String target = parts[1];
+			int question = target.indexOf('?');
+			request.path = (question < 0) ? target : target.substring(0, question);
+			if (question >= 0) {
+				try {
+					parseQuery(target.substring(question + 1), request.query);
+				} catch (IllegalArgumentException e) {
+					// URLDecoder's answer to a bad % escape
+					request.badRequest = "Malformed query string";
+					return request;
+				}
+			}
+
+			int length = 0;
+			String header;
+			while ((header = readLine(in, line)) != null && header.length() > 0) {
+				int colon = header.indexOf(':');
+				if (colon < 0)
+					continue;
+				String name = header.substring(0, colon).trim();
+				String value = header.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length")) {
+					try {
+						length = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						request.badRequest = "Malformed Content-Length";
+						return request;
+					}
+				} else if (name.equalsIgnoreCase("Connection")) {
+					if (value.equalsIgnoreCase("close"))
+						request.keepAlive = false;
+					else if (value.equalsIgnoreCase("keep-alive"))
+						request.keepAlive = true;
+				}
+			}
+			if (header == null)
+				return null;
+
+			if (length < 0 || length > MAX_BODY) {
+				request.badRequest = "Request body must be at most " + MAX_BODY + " bytes";
+				return request;
+			}
+			if (length > 0) {
+				byte[] body = new byte[length];
+				int read = 0;
+				while (read < length) {
+					int n = in.read(body, read, length - read);
+					if (n < 0)
+						return null;
+					read += n;
+				}
+				request.body = new String(body, "UTF-8");
+			}
+			return request;
+		}
+
+		private static void parseQuery(String query, Map<String, String> into) throws UnsupportedEncodingException {
+			for (String pair : query.split("&")) {
+				int equals = pair.indexOf('=');
+				if (equals > 0)
+					into.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+
+		/**
+		 * @return				The next line without its line break, or null at end of stream
+		 */
+		private static String readLine(InputStream in, StringBuilder line) throws IOException {
+			line.setLength(0);
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0)
+					return line.length() == 0 ? null : line.toString();
+				if (line.length() == MAX_LINE)
+					throw new IOException("Line too long");
+				if (c != '\r')
+					line.append((char) c);
+			}
+			return line.toString();
+		}
+	}
+
+	/**
+	 * Names connection threads and marks them as daemons.
+	 */
+	private static class ConnectionFactory implements ThreadFactory {
+		private final AtomicInteger thread = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "XValServer-" + this.thread.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package org.cooltrainer.xval;
+
+import android.util.Log;
+
+/**
+ * Sends {@link CoolLog} messages to Android's Log. Only loaded on a device,
+ * so headless code never touches android.util.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+class AndroidLogBackend implements LogBackend {
+	public boolean isLoggable(String tag, int level) {
+		return Log.isLoggable(tag, level);
+	}
+
+	public void println(int level, String tag, String msg, Throwable tr) {
+		if (tr != null)
+			msg = msg + '\n' + Log.getStackTraceString(tr);
+		Log.println(level, tag, msg);
+	}
+}
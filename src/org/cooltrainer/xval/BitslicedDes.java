@@ -0,0 +1,231 @@
+package org.cooltrainer.xval;
+
+/**
+ * A bit-sliced DES that decrypts 64 independent blocks, each under its own key, in one pass.
+ *
+ * Blocks and keys are transposed so that element i of a plane array holds bit i
+ * (counted from the least significant bit) of all 64 lanes, one lane per bit.
+ * Every permutation then becomes a choice of array index, worked out once at
+ * class load, and each S-box becomes a tree of bitwise multiplexers built from
+ * its truth table. The key schedule costs nothing per pass beyond the transpose.
+ *
+ * An instance holds scratch planes and is not thread-safe.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+final class BitslicedDes {
+	/** Number of blocks handled per pass */
+	static final int LANES = 64;
+
+	/** Plane index of each bit after the initial permutation, in DES bit order */
+	private static final int[] IP_PLANE = new int[64];
+
+	/** Plane index of each output bit taken from the pre-output (R16 || L16) */
+	private static final int[] FP_SOURCE = new int[64];
+
+	/** Right-half bit (0-based, DES order) feeding each of the 48 expanded bits */
+	private static final int[] E_SOURCE = new int[48];
+
+	/** Key plane index for each of the 48 bits of each round key */
+	private static final int[][] KEY_PLANE = new int[16][48];
+
+	/** Round function output bit (0-based, DES order) for each S-box output bit, after P */
+	private static final int[] P_TARGET = new int[32];
+
+	/**
+	 * S-box truth tables as multiplexer leaves. LEAF[box][bit][quad] is the output bit
+	 * as a function of the last two input bits, for the four inputs selected by the
+	 * first four: a four-bit truth table, bit n giving the output for last two bits n.
+	 */
+	private static final byte[][][] LEAF = new byte[8][4][16];
+
+	static {
+		for (int i = 0; i < 64; i++) {
+			IP_PLANE[i] = 64 - Des.IP[i];
+		}
+
+		// Pre-output bit b (1-based) is R16 for b <= 32, L16 otherwise. FP is the inverse of IP.
+		int[] fp = new int[64];
+		for (int i = 0; i < 64; i++) {
+			fp[Des.IP[i] - 1] = i + 1;
+		}
+		for (int i = 0; i < 64; i++) {
+			FP_SOURCE[i] = fp[i] - 1;
+		}
+
+		for (int box = 0; box < 8; box++) {
+			for (int k = 0; k < 6; k++) {
+				E_SOURCE[6 * box + k] = (4 * box + k - 1 + 32) % 32;
+			}
+		}
+
+		int[] c = new int[28], d = new int[28];
+		for (int i = 0; i < 28; i++) {
+			c[i] = Des.PC1[i];
+			d[i] = Des.PC1[28 + i];
+		}
+		for (int round = 0; round < 16; round++) {
+			for (int s = 0; s < Des.SHIFTS[round]; s++) {
+				rotate(c);
+				rotate(d);
+			}
+			for (int i = 0; i < 48; i++) {
+				int cd = Des.PC2[i] - 1;
+				int keyBit = (cd < 28) ? c[cd] : d[cd - 28];
+				KEY_PLANE[round][i] = 64 - keyBit;
+			}
+		}
+
+		for (int i = 0; i < 32; i++) {
+			P_TARGET[Des.P[i] - 1] = i;
+		}
+
+		for (int box = 0; box < 8; box++) {
+			for (int bit = 0; bit < 4; bit++) {
+				for (int quad = 0; quad < 16; quad++) {
+					int table = 0;
+					for (int n = 0; n < 4; n++) {
+						table |= ((sbox(box, (quad << 2) | n) >>> (3 - bit)) & 1) << n;
+					}
+					LEAF[box][bit][quad] = (byte) table;
+				}
+			}
+		}
+	}
+
+	private final long[] key = new long[64];
+	private final long[] block = new long[64];
+	private final long[] l = new long[32];
+	private final long[] r = new long[32];
+	private final long[] f = new long[32];
+	private final long[] in = new long[6];
+	private final long[] functions = new long[16];
+	private final long[] tree = new long[16];
+
+	/**
+	 * Decrypts 64 blocks, each under its own key.
+	 *
+	 * @param keys			64-bit DES keys, one per lane
+	 * @param blocks		Ciphertext blocks, one per lane
+	 * @param out			Receives plaintext blocks, one per lane; may be the same array as blocks
+	 * @param keyOffset		Index of the first lane's key
+	 * @param offset		Index of the first lane in blocks and out
+	 */
+	void decrypt(long[] keys, long[] blocks, long[] out, int keyOffset, int offset) {
+		System.arraycopy(keys, keyOffset, this.key, 0, LANES);
+		System.arraycopy(blocks, offset, this.block, 0, LANES);
+		transpose(this.key);
+		transpose(this.block);
+
+		for (int i = 0; i < 32; i++) {
+			this.l[i] = this.block[IP_PLANE[i]];
+			this.r[i] = this.block[IP_PLANE[32 + i]];
+		}
+
+		long[] left = this.l, right = this.r;
+		for (int round = 15; round >= 0; round--) {
+			roundFunction(right, KEY_PLANE[round]);
+			for (int i = 0; i < 32; i++) {
+				left[i] ^= this.f[i];
+			}
+			long[] t = left;
+			left = right;
+			right = t;
+		}
+
+		// Pre-output is R16 || L16
+		for (int i = 0; i < 64; i++) {
+			int src = FP_SOURCE[i];
+			this.block[63 - i] = (src < 32) ? right[src] : left[src - 32];
+		}
+
+		transpose(this.block);
+		System.arraycopy(this.block, 0, out, offset, LANES);
+	}
+
+	/**
+	 * Computes f(R, K) for all lanes into {@link #f}.
+	 */
+	private void roundFunction(long[] right, int[] keyPlane) {
+		long[] in = this.in;
+		for (int box = 0; box < 8; box++) {
+			for (int k = 0; k < 6; k++) {
+				in[k] = right[E_SOURCE[6 * box + k]] ^ this.key[keyPlane[6 * box + k]];
+			}
+			functions(in[4], in[5]);
+			for (int bit = 0; bit < 4; bit++) {
+				this.f[P_TARGET[4 * box + bit]] = sbox(LEAF[box][bit], in);
+			}
+		}
+	}
+
+	/**
+	 * Computes all sixteen functions of the last two S-box input bits into
+	 * {@link #functions}, indexed by truth table as in {@link #LEAF}.
+	 */
+	private void functions(long b4, long b5) {
+		long[] functions = this.functions;
+		long[] minterm = this.tree;
+		minterm[0] = ~b4 & ~b5;
+		minterm[1] = ~b4 & b5;
+		minterm[2] = b4 & ~b5;
+		minterm[3] = b4 & b5;
+		functions[0] = 0;
+		for (int table = 1; table < 16; table++) {
+			functions[table] = functions[table & (table - 1)] | minterm[Integer.numberOfTrailingZeros(table)];
+		}
+	}
+
+	/**
+	 * Evaluates one S-box output bit for all lanes as a multiplexer tree.
+	 *
+	 * @param leaf			Leaf truth tables for this output bit, from {@link #LEAF}
+	 * @param in			The six input planes, first input bit first
+	 * @return				The output plane
+	 */
+	private long sbox(byte[] leaf, long[] in) {
+		long[] functions = this.functions;
+		long[] tree = this.tree;
+		for (int quad = 0; quad < 16; quad++) {
+			tree[quad] = functions[leaf[quad]];
+		}
+		for (int width = 8, select = 3; width > 0; width >>>= 1, select--) {
+			long s = in[select];
+			for (int i = 0; i < width; i++) {
+				long lo = tree[2 * i];
+				tree[i] = lo ^ ((lo ^ tree[2 * i + 1]) & s);
+			}
+		}
+		return tree[0];
+	}
+
+	/**
+	 * Looks up an S-box by its six-bit input, first input bit most significant.
+	 */
+	private static int sbox(int box, int x) {
+		int row = ((x >>> 4) & 0x2) | (x & 0x1);
+		int col = (x >>> 1) & 0xF;
+		return Des.S[box][row * 16 + col];
+	}
+
+	private static void rotate(int[] half) {
+		int first = half[0];
+		System.arraycopy(half, 1, half, 0, half.length - 1);
+		half[half.length - 1] = first;
+	}
+
+	/**
+	 * Transposes a 64 x 64 bit matrix in place: bit c of row r swaps with bit r of row c.
+	 */
+	static void transpose(long[] a) {
+		long m = 0x00000000FFFFFFFFL;
+		for (int j = 32; j != 0; j >>>= 1, m ^= m << j) {
+			for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+				long t = ((a[k] >>> j) ^ a[k | j]) & m;
+				a[k] ^= t << j;
+				a[k | j] ^= t;
+			}
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package org.cooltrainer.xval;
 
-import android.util.Log;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class wraps the native Android logging facility and checks
@@ -9,69 +9,337 @@ import android.util.Log;
  * to isLoggable(). Just call the CoolLog static methods as you would
  * call Log.
  * 
+ * Messages that cost something to build can be passed as a {@link Message}
+ * or as a format String and arguments, and are only built if they will be
+ * logged. The lowest loggable level of each tag is looked up once and
+ * cached; call {@link #invalidateLevels()} after changing log levels.
+ * 
+ * Off Android, messages go to standard error instead, with levels taken
+ * from the xval.log.level system properties (see {@link JvmLogBackend}).
+ * 
+ * With {@link #setAsync(int)}, messages are queued on a ring buffer and
+ * formatted and written by a background thread, so logging never makes
+ * the caller wait; if the buffer fills, messages are dropped and counted.
+ * 
  * @author 		Nicole Reid <root@cooltrainer.org>
- * @version		2012-07-12
+ * @version		2026-10-17
  *
  */
 public class CoolLog {
-
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+	public static final int ASSERT = 7;
+	
+	/** Cached for tags that log nothing at all */
+	private static final Integer SILENT = Integer.valueOf(ASSERT + 1);
+	
+	/**
+	 * A log message built only when it will be logged.
+	 */
+	public interface Message {
+		/**
+		 * @return			The message
+		 */
+		String get();
+	}
+	
+	private static final LogBackend backend = createBackend();
+	
+	/** Lowest loggable level of each tag seen so far */
+	private static final ConcurrentHashMap<String, Integer> levels = new ConcurrentHashMap<String, Integer>();
+	
+	private static volatile LogRing ring;
+	
+	/** Messages dropped by rings that have since been replaced */
+	private static volatile long retiredDropped;
+	
+	/**
+	 * @param tag			Log tag
+	 * @param level			One of the level constants
+	 * @return				true if messages at that level are logged for the tag
+	 */
+	public static boolean isLoggable(String tag, int level) {
+		Integer lowest = levels.get(tag);
+		if (lowest == null) {
+			lowest = SILENT;
+			for (int l = VERBOSE; l <= ASSERT; l++) {
+				if (backend.isLoggable(tag, l)) {
+					lowest = Integer.valueOf(l);
+					break;
+				}
+			}
+			levels.put(tag, lowest);
+		}
+		return level >= lowest.intValue();
+	}
+	
+	/**
+	 * Forgets every cached tag level, so the next message for each tag
+	 * looks its level up again.
+	 */
+	public static void invalidateLevels() {
+		levels.clear();
+	}
+	
+	/**
+	 * Forgets one tag's cached level.
+	 * 
+	 * @param tag			Log tag
+	 */
+	public static void invalidateLevel(String tag) {
+		levels.remove(tag);
+	}
+	
+	/**
+	 * Turns asynchronous logging on or off. The new ring buffer's writer is
+	 * started first and waits while the previous ring buffer drains, then
+	 * goes on to the messages passed on to it meanwhile, so each thread's
+	 * messages stay in order.
+	 * 
+	 * @param capacity		Messages to buffer, or 0 to log on the calling thread again
+	 */
+	public static synchronized void setAsync(int capacity) {
+		LogRing old = ring;
+		LogRing next = (capacity > 0) ? new LogRing(backend, capacity, old) : null;
+		if (next != null)
+			next.start();
+		if (old != null)
+			old.close(next);
+		ring = next;
+		if (old != null) {
+			// Nothing more can be dropped by a closed ring
+			retiredDropped += old.getDropped();
+		}
+	}
+	
+	/**
+	 * Waits until every message queued so far has been written.
+	 */
+	public static void flush() {
+		LogRing ring = CoolLog.ring;
+		if (ring != null)
+			ring.flush();
+	}
+	
+	/**
+	 * @return				Messages dropped because a ring buffer was full, since logging started
+	 */
+	public static long getDropped() {
+		LogRing ring = CoolLog.ring;
+		return retiredDropped + ((ring == null) ? 0 : ring.getDropped());
+	}
+	
 	public static void d(String tag, String msg) {
-		if (Log.isLoggable(tag, Log.DEBUG)) {
-			Log.d(tag, msg);
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, msg, null, null);
 		}
 	}
 	
 	public static void d(String tag, String msg, Throwable tr) {
-		if (Log.isLoggable(tag, Log.DEBUG)) {
-			Log.d(tag, msg, tr);
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, msg, null, tr);
+		}
+	}
+	
+	public static void d(String tag, Message msg) {
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, msg, null, null);
+		}
+	}
+	
+	public static void d(String tag, String format, Object arg) {
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, format, new Object[] { arg }, null);
+		}
+	}
+	
+	public static void d(String tag, String format, Object arg1, Object arg2) {
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, format, new Object[] { arg1, arg2 }, null);
+		}
+	}
+	
+	public static void d(String tag, String format, Object... args) {
+		if (isLoggable(tag, DEBUG)) {
+			log(DEBUG, tag, format, args, null);
 		}
 	}
 
 	public static void i(String tag, String msg) {
-		if (Log.isLoggable(tag, Log.INFO)) {
-			Log.i(tag, msg);
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, msg, null, null);
 		}
 	}
 	
 	public static void i(String tag, String msg, Throwable tr) {
-		if (Log.isLoggable(tag, Log.INFO)) {
-			Log.i(tag, msg, tr);
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, msg, null, tr);
+		}
+	}
+	
+	public static void i(String tag, Message msg) {
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, msg, null, null);
+		}
+	}
+	
+	public static void i(String tag, String format, Object arg) {
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, format, new Object[] { arg }, null);
+		}
+	}
+	
+	public static void i(String tag, String format, Object arg1, Object arg2) {
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, format, new Object[] { arg1, arg2 }, null);
+		}
+	}
+	
+	public static void i(String tag, String format, Object... args) {
+		if (isLoggable(tag, INFO)) {
+			log(INFO, tag, format, args, null);
 		}
 	}
 
 	public static void e(String tag, String msg) {
-		if (Log.isLoggable(tag, Log.ERROR)) {
-			Log.e(tag, msg);
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, msg, null, null);
 		}
 	}
-
+	
 	public static void e(String tag, String msg, Throwable tr) {
-		if (Log.isLoggable(tag, Log.ERROR)) {
-			Log.e(tag, msg, tr);
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, msg, null, tr);
+		}
+	}
+	
+	public static void e(String tag, Message msg) {
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, msg, null, null);
+		}
+	}
+	
+	public static void e(String tag, String format, Object arg) {
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, format, new Object[] { arg }, null);
+		}
+	}
+	
+	public static void e(String tag, String format, Object arg1, Object arg2) {
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, format, new Object[] { arg1, arg2 }, null);
+		}
+	}
+	
+	public static void e(String tag, String format, Object... args) {
+		if (isLoggable(tag, ERROR)) {
+			log(ERROR, tag, format, args, null);
 		}
 	}
 
 	public static void v(String tag, String msg) {
-		if (Log.isLoggable(tag, Log.VERBOSE)) {
-			Log.v(tag, msg);
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, msg, null, null);
 		}
 	}
-
+	
 	public static void v(String tag, String msg, Throwable tr) {
-		if (Log.isLoggable(tag, Log.VERBOSE)) {
-			Log.v(tag, msg, tr);
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, msg, null, tr);
+		}
+	}
+	
+	public static void v(String tag, Message msg) {
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, msg, null, null);
+		}
+	}
+	
+	public static void v(String tag, String format, Object arg) {
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, format, new Object[] { arg }, null);
+		}
+	}
+	
+	public static void v(String tag, String format, Object arg1, Object arg2) {
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, format, new Object[] { arg1, arg2 }, null);
+		}
+	}
+	
+	public static void v(String tag, String format, Object... args) {
+		if (isLoggable(tag, VERBOSE)) {
+			log(VERBOSE, tag, format, args, null);
 		}
 	}
 
 	public static void w(String tag, String msg) {
-		if (Log.isLoggable(tag, Log.WARN)) {
-			Log.w(tag, msg);
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, msg, null, null);
 		}
 	}
-
+	
 	public static void w(String tag, String msg, Throwable tr) {
-		if (Log.isLoggable(tag, Log.WARN)) {
-			Log.w(tag, msg, tr);
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, msg, null, tr);
+		}
+	}
+	
+	public static void w(String tag, Message msg) {
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, msg, null, null);
+		}
+	}
+	
+	public static void w(String tag, String format, Object arg) {
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, format, new Object[] { arg }, null);
+		}
+	}
+	
+	public static void w(String tag, String format, Object arg1, Object arg2) {
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, format, new Object[] { arg1, arg2 }, null);
+		}
+	}
+	
+	public static void w(String tag, String format, Object... args) {
+		if (isLoggable(tag, WARN)) {
+			log(WARN, tag, format, args, null);
+		}
+	}
+	/**
+	 * Builds a message from a String, a {@link Message}, or a format String and arguments.
+	 */
+	static String format(Object message, Object[] args) {
+		if (message instanceof Message)
+			return ((Message) message).get();
+		String text = String.valueOf(message);
+		return (args == null) ? text : String.format(text, args);
+	}
+	
+	private static void log(int level, String tag, Object message, Object[] args, Throwable tr) {
+		LogRing ring = CoolLog.ring;
+		if (ring != null)
+			ring.offer(level, tag, message, args, tr);
+		else
+			backend.println(level, tag, format(message, args), tr);
+	}
+	
+	private static LogBackend createBackend() {
+		// ART still calls itself Dalvik
+		if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
+			try {
+				return (LogBackend) Class.forName("org.cooltrainer.xval.AndroidLogBackend").getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				// Not found, or couldn't be constructed: fall through to standard error
+			} catch (LinkageError e) {
+				// Built without the Android classes it needs
+			}
 		}
+		return new JvmLogBackend();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+package org.cooltrainer.xval;
+
+/**
+ * A single-block DES implementation working entirely on primitive longs.
+ *
+ * Every bit permutation in the standard (IP, FP, PC-1, PC-2 and P) is
+ * expanded at class load into per-byte lookup tables, so a permutation
+ * costs a handful of table reads and a key schedule or block costs no
+ * allocation at all. Blocks and keys are big-endian: the first byte of
+ * the eight-byte form is the most significant byte of the long.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+final class Des {
+
+	/** Initial permutation, FIPS 46-3 bit numbering (1 = most significant) */
+	static final int[] IP = {
+		58, 50, 42, 34, 26, 18, 10, 2,
+		60, 52, 44, 36, 28, 20, 12, 4,
+		62, 54, 46, 38, 30, 22, 14, 6,
+		64, 56, 48, 40, 32, 24, 16, 8,
+		57, 49, 41, 33, 25, 17, 9, 1,
+		59, 51, 43, 35, 27, 19, 11, 3,
+		61, 53, 45, 37, 29, 21, 13, 5,
+		63, 55, 47, 39, 31, 23, 15, 7
+	};
+
+	/** Permutation applied to the S-box outputs in the round function */
+	static final int[] P = {
+		16, 7, 20, 21, 29, 12, 28, 17,
+		1, 15, 23, 26, 5, 18, 31, 10,
+		2, 8, 24, 14, 32, 27, 3, 9,
+		19, 13, 30, 6, 22, 11, 4, 25
+	};
+
+	/** Permuted choice 1, selecting the 56 key bits from the 64-bit key */
+	static final int[] PC1 = {
+		57, 49, 41, 33, 25, 17, 9,
+		1, 58, 50, 42, 34, 26, 18,
+		10, 2, 59, 51, 43, 35, 27,
+		19, 11, 3, 60, 52, 44, 36,
+		63, 55, 47, 39, 31, 23, 15,
+		7, 62, 54, 46, 38, 30, 22,
+		14, 6, 61, 53, 45, 37, 29,
+		21, 13, 5, 28, 20, 12, 4
+	};
+
+	/** Permuted choice 2, selecting a 48-bit round key from the 56 key bits */
+	static final int[] PC2 = {
+		14, 17, 11, 24, 1, 5,
+		3, 28, 15, 6, 21, 10,
+		23, 19, 12, 4, 26, 8,
+		16, 7, 27, 20, 13, 2,
+		41, 52, 31, 37, 47, 55,
+		30, 40, 51, 45, 33, 48,
+		44, 49, 39, 56, 34, 53,
+		46, 42, 50, 36, 29, 32
+	};
+
+	/** Left rotations of the C and D key halves before each round */
+	static final int[] SHIFTS = { 1, 1, 2, 2, 2, 2, 2, 2, 1, 2, 2, 2, 2, 2, 2, 1 };
+
+	/** S-boxes, each as four rows of sixteen */
+	static final int[][] S = {
+		{
+			14, 4, 13, 1, 2, 15, 11, 8, 3, 10, 6, 12, 5, 9, 0, 7,
+			0, 15, 7, 4, 14, 2, 13, 1, 10, 6, 12, 11, 9, 5, 3, 8,
+			4, 1, 14, 8, 13, 6, 2, 11, 15, 12, 9, 7, 3, 10, 5, 0,
+			15, 12, 8, 2, 4, 9, 1, 7, 5, 11, 3, 14, 10, 0, 6, 13
+		}, {
+			15, 1, 8, 14, 6, 11, 3, 4, 9, 7, 2, 13, 12, 0, 5, 10,
+			3, 13, 4, 7, 15, 2, 8, 14, 12, 0, 1, 10, 6, 9, 11, 5,
+			0, 14, 7, 11, 10, 4, 13, 1, 5, 8, 12, 6, 9, 3, 2, 15,
+			13, 8, 10, 1, 3, 15, 4, 2, 11, 6, 7, 12, 0, 5, 14, 9
+		}, {
+			10, 0, 9, 14, 6, 3, 15, 5, 1, 13, 12, 7, 11, 4, 2, 8,
+			13, 7, 0, 9, 3, 4, 6, 10, 2, 8, 5, 14, 12, 11, 15, 1,
+			13, 6, 4, 9, 8, 15, 3, 0, 11, 1, 2, 12, 5, 10, 14, 7,
+			1, 10, 13, 0, 6, 9, 8, 7, 4, 15, 14, 3, 11, 5, 2, 12
+		}, {
+			7, 13, 14, 3, 0, 6, 9, 10, 1, 2, 8, 5, 11, 12, 4, 15,
+			13, 8, 11, 5, 6, 15, 0, 3, 4, 7, 2, 12, 1, 10, 14, 9,
+			10, 6, 9, 0, 12, 11, 7, 13, 15, 1, 3, 14, 5, 2, 8, 4,
+			3, 15, 0, 6, 10, 1, 13, 8, 9, 4, 5, 11, 12, 7, 2, 14
+		}, {
+			2, 12, 4, 1, 7, 10, 11, 6, 8, 5, 3, 15, 13, 0, 14, 9,
+			14, 11, 2, 12, 4, 7, 13, 1, 5, 0, 15, 10, 3, 9, 8, 6,
+			4, 2, 1, 11, 10, 13, 7, 8, 15, 9, 12, 5, 6, 3, 0, 14,
+			11, 8, 12, 7, 1, 14, 2, 13, 6, 15, 0, 9, 10, 4, 5, 3
+		}, {
+			12, 1, 10, 15, 9, 2, 6, 8, 0, 13, 3, 4, 14, 7, 5, 11,
+			10, 15, 4, 2, 7, 12, 9, 5, 6, 1, 13, 14, 0, 11, 3, 8,
+			9, 14, 15, 5, 2, 8, 12, 3, 7, 0, 4, 10, 1, 13, 11, 6,
+			4, 3, 2, 12, 9, 5, 15, 10, 11, 14, 1, 7, 6, 0, 8, 13
+		}, {
+			4, 11, 2, 14, 15, 0, 8, 13, 3, 12, 9, 7, 5, 10, 6, 1,
+			13, 0, 11, 7, 4, 9, 1, 10, 14, 3, 5, 12, 2, 15, 8, 6,
+			1, 4, 11, 13, 12, 3, 7, 14, 10, 15, 6, 8, 0, 5, 9, 2,
+			6, 11, 13, 8, 1, 4, 10, 7, 9, 5, 0, 15, 14, 2, 3, 12
+		}, {
+			13, 2, 8, 4, 6, 15, 11, 1, 10, 9, 3, 14, 5, 0, 12, 7,
+			1, 15, 13, 8, 10, 3, 7, 4, 12, 5, 6, 11, 0, 14, 9, 2,
+			7, 11, 4, 1, 9, 12, 14, 2, 0, 6, 10, 13, 15, 3, 5, 8,
+			2, 1, 14, 7, 4, 10, 8, 13, 15, 12, 9, 0, 3, 5, 6, 11
+		}
+	};
+
+	private static final long[][] ipTable = permutationTable(IP, 64);
+	private static final long[][] fpTable = permutationTable(inverse(IP), 64);
+	private static final long[][] pc1Table = permutationTable(PC1, 64);
+	private static final long[][] pc2Table = permutationTable(PC2, 56);
+
+	/**
+	 * Combined S-box and P permutation tables. SP[i][x] is the round function
+	 * output contributed by S-box i for the six-bit input x.
+	 */
+	private static final int[][] SP = new int[8][64];
+
+	static {
+		long[][] pTable = permutationTable(P, 32);
+		for (int box = 0; box < 8; box++) {
+			for (int x = 0; x < 64; x++) {
+				int row = ((x >>> 4) & 0x2) | (x & 0x1);
+				int col = (x >>> 1) & 0xF;
+				long out = (long) S[box][row * 16 + col] << (28 - 4 * box);
+				SP[box][x] = (int) permute(out, pTable, 4);
+			}
+		}
+	}
+
+	private Des() {
+	}
+
+	/**
+	 * Expands a DES key into its sixteen 48-bit round keys. Parity bits are ignored.
+	 *
+	 * @param key			64-bit DES key
+	 * @param schedule		Receives the round keys; at least sixteen elements
+	 */
+	static void schedule(long key, long[] schedule) {
+		long cd = permute(key, pc1Table, 8);
+		int c = (int) (cd >>> 28);
+		int d = (int) cd & 0x0FFFFFFF;
+		for (int round = 0; round < 16; round++) {
+			int shift = SHIFTS[round];
+			c = ((c << shift) | (c >>> (28 - shift))) & 0x0FFFFFFF;
+			d = ((d << shift) | (d >>> (28 - shift))) & 0x0FFFFFFF;
+			schedule[round] = permute(((long) c << 28) | d, pc2Table, 7);
+		}
+	}
+
+	/**
+	 * Encrypts one block.
+	 *
+	 * @param schedule		Round keys from {@link #schedule(long, long[])}
+	 * @param block			Plaintext block
+	 * @return				Ciphertext block
+	 */
+	static long encrypt(long[] schedule, long block) {
+		long ip = permute(block, ipTable, 8);
+		int l = (int) (ip >>> 32);
+		int r = (int) ip;
+		for (int round = 0; round < 16; round++) {
+			int t = r;
+			r = l ^ f(r, schedule[round]);
+			l = t;
+		}
+		return permute(((long) r << 32) | (l & 0xFFFFFFFFL), fpTable, 8);
+	}
+
+	/**
+	 * Decrypts one block.
+	 *
+	 * @param schedule		Round keys from {@link #schedule(long, long[])}
+	 * @param block			Ciphertext block
+	 * @return				Plaintext block
+	 */
+	static long decrypt(long[] schedule, long block) {
+		long ip = permute(block, ipTable, 8);
+		int l = (int) (ip >>> 32);
+		int r = (int) ip;
+		for (int round = 15; round >= 0; round--) {
+			int t = r;
+			r = l ^ f(r, schedule[round]);
+			l = t;
+		}
+		return permute(((long) r << 32) | (l & 0xFFFFFFFFL), fpTable, 8);
+	}
+
+	/**
+	 * The DES round function. The expansion E is folded into rotations:
+	 * the i-th six-bit group of E(r) is the top six bits of r rotated left by 4i - 1.
+	 */
+	private static int f(int r, long roundKey) {
+		int out = 0;
+		for (int box = 0; box < 8; box++) {
+			int group = (Integer.rotateLeft(r, 4 * box - 1) >>> 26) ^ (int) (roundKey >>> (42 - 6 * box));
+			out |= SP[box][group & 0x3F];
+		}
+		return out;
+	}
+
+	/**
+	 * Applies a bit permutation using tables from {@link #permutationTable(int[], int)}.
+	 *
+	 * @param in			Input bits, right-aligned
+	 * @param table			Per-byte lookup tables for the permutation
+	 * @param bytes			Input width in bytes
+	 * @return				Permuted bits, right-aligned
+	 */
+	private static long permute(long in, long[][] table, int bytes) {
+		long out = 0;
+		for (int i = 0; i < bytes; i++) {
+			out |= table[i][(int) (in >>> (8 * (bytes - 1 - i))) & 0xFF];
+		}
+		return out;
+	}
+
+	/**
+	 * Expands a FIPS-style permutation table into per-input-byte lookup tables.
+	 *
+	 * @param permutation	For each output bit, the 1-based input bit it takes (1 = most significant)
+	 * @param inBits		Input width in bits, a multiple of eight
+	 * @return				table[inputByte][value] giving that byte's contribution to the output
+	 */
+	private static long[][] permutationTable(int[] permutation, int inBits) {
+		int outBits = permutation.length;
+		long[][] table = new long[inBits / 8][256];
+		for (int out = 0; out < outBits; out++) {
+			int in = permutation[out] - 1;
+			long outMask = 1L << (outBits - 1 - out);
+			int inMask = 0x80 >>> (in % 8);
+			for (int value = 0; value < 256; value++) {
+				if ((value & inMask) != 0)
+					table[in / 8][value] |= outMask;
+			}
+		}
+		return table;
+	}
+
+	private static int[] inverse(int[] permutation) {
+		int[] inverse = new int[permutation.length];
+		for (int i = 0; i < permutation.length; i++) {
+			inverse[permutation[i] - 1] = i + 1;
+		}
+		return inverse;
+	}
+}
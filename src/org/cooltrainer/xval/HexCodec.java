@@ -0,0 +1,213 @@
+package org.cooltrainer.xval;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The HexCodec class converts 64-bit values to and from sixteen ASCII
+ * hexadecimal digits, a whole buffer of them at a time.
+ *
+ * Bulk conversion works eight digits at once inside a long (SWAR): eight
+ * ASCII bytes are read with one getLong, checked and turned into nibbles
+ * with a few masks and adds, and squeezed together with three shifts, and
+ * encoding runs the same steps backwards. There is no branch per digit and
+ * no table lookup, which is what the JIT of a Java 5 or Dalvik VM needs
+ * in lieu of vector instructions.
+ *
+ * There is no Vector API path, even for the cli and server modules. The
+ * API is still an incubator module that has to be added with
+ * --add-modules both to build and to run, and each value here is only two
+ * SWAR words wide, too narrow for a vector's lanes to pay off without
+ * changing the row layout.
+ *
+ * Bulk methods take values as plain digits, no dashes, at a fixed stride:
+ * fixed-width rows, or a packed run of digits with a stride of sixteen.
+ * {@link XValParser} handles 'X' values as typed, dashes and all.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class HexCodec {
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long LOW_NIBBLES = 0x0F0F0F0F0F0F0F0FL;
+
+	static final char[] LOWER = "0123456789abcdef".toCharArray();
+	static final char[] UPPER = "0123456789ABCDEF".toCharArray();
+
+	/** Value of each ASCII hex digit, -1 for every other character */
+	private static final byte[] VALUE = new byte[128];
+
+	static {
+		for (int i = 0; i < VALUE.length; i++)
+			VALUE[i] = -1;
+		for (int i = 0; i < 16; i++) {
+			VALUE[LOWER[i]] = (byte) i;
+			VALUE[UPPER[i]] = (byte) i;
+		}
+	}
+
+	private HexCodec() {
+	}
+
+	/**
+	 * Decodes a run of values, each sixteen hexadecimal digits in either case.
+	 * The buffer's position is left alone.
+	 *
+	 * @param in			ASCII bytes
+	 * @param offset		Index of the first value's first digit
+	 * @param stride		Bytes from one value's first digit to the next's; at least 16
+	 * @param out			Receives the values
+	 * @param from			Index in out of the first value
+	 * @param count			Values to decode
+	 * @return				Values decoded: count, or the index of the first that isn't sixteen hexadecimal digits
+	 */
+	public static int decode(ByteBuffer in, int offset, int stride, long[] out, int from, int count) {
+		for (int i = 0; i < count; i++) {
+			int at = offset + i * stride;
+			long high = in.getLong(at);
+			long low = in.getLong(at + 8);
+			if (!valid(high) || !valid(low))
+				return i;
+			out[from + i] = (pack(high) << 32) | pack(low);
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes a run of values; see {@link #decode(ByteBuffer, int, int, long[], int, int)}.
+	 */
+	public static int decode(byte[] in, int offset, int stride, long[] out, int from, int count) {
+		return decode(ByteBuffer.wrap(in), offset, stride, out, from, count);
+	}
+
+	/**
+	 * Encodes a run of values as sixteen hexadecimal digits each. Bytes
+	 * between one value and the next are left alone. The buffer's position
+	 * is left alone.
+	 *
+	 * @param in			Values to encode
+	 * @param from			Index in in of the first value
+	 * @param count			Values to encode
+	 * @param out			Receives ASCII digits
+	 * @param offset		Index of the first value's first digit
+	 * @param stride		Bytes from one value's first digit to the next's; at least 16
+	 * @param upper			true for A-F, false for a-f
+	 */
+	public static void encode(long[] in, int from, int count, ByteBuffer out, int offset, int stride, boolean upper) {
+		for (int i = 0; i < count; i++)
+			encode(in[from + i], out, offset + i * stride, upper);
+	}
+
+	/**
+	 * Encodes a run of values; see {@link #encode(long[], int, int, ByteBuffer, int, int, boolean)}.
+	 */
+	public static void encode(long[] in, int from, int count, byte[] out, int offset, int stride, boolean upper) {
+		encode(in, from, count, ByteBuffer.wrap(out), offset, stride, upper);
+	}
+
+	/**
+	 * Encodes one value as sixteen hexadecimal digits. The buffer's position is left alone.
+	 *
+	 * @param value			Value to encode
+	 * @param out			Receives ASCII digits
+	 * @param offset		Index of the first digit
+	 * @param upper			true for A-F, false for a-f
+	 */
+	public static void encode(long value, ByteBuffer out, int offset, boolean upper) {
+		out.putLong(offset, spread((int) (value >>> 32), upper));
+		out.putLong(offset + 8, spread((int) value, upper));
+	}
+
+	/**
+	 * Appends one value as sixteen hexadecimal digits.
+	 *
+	 * @param value			Value to encode
+	 * @param out			Where to append
+	 * @param upper			true for A-F, false for a-f
+	 * @return				out
+	 */
+	public static StringBuilder encode(long value, StringBuilder out, boolean upper) {
+		append(out, spread((int) (value >>> 32), upper));
+		append(out, spread((int) value, upper));
+		return out;
+	}
+
+	/**
+	 * Decodes pairs of hexadecimal digits into bytes.
+	 *
+	 * @param hex			An even number of hexadecimal digits, in either case
+	 * @return				One byte per two digits
+	 * @throws IllegalArgumentException	If a character isn't a hexadecimal digit
+	 */
+	public static byte[] decode(CharSequence hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int high = value(hex.charAt(2 * i));
+			int low = value(hex.charAt(2 * i + 1));
+			if ((high | low) < 0)
+				throw new IllegalArgumentException("Not a hexadecimal digit at " + (2 * i));
+			bytes[i] = (byte) ((high << 4) | low);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return				Value of a hexadecimal digit, or -1
+	 */
+	static int value(char c) {
+		return (c < VALUE.length) ? VALUE[c] : -1;
+	}
+
+	/**
+	 * @return				true if all eight bytes are ASCII hexadecimal digits
+	 */
+	private static boolean valid(long ascii) {
+		// Non-ASCII bytes would carry into their neighbours below
+		if ((ascii & HIGH_BITS) != 0)
+			return false;
+		long folded = ascii | (0x20 * ONES);
+		long digit = ge(ascii, '0') & ~ge(ascii, '9' + 1);
+		long letter = ge(folded, 'a') & ~ge(folded, 'f' + 1);
+		return (digit | letter) == HIGH_BITS;
+	}
+
+	/**
+	 * @return				Each byte's high bit set where that byte is at least bound; bytes must be ASCII
+	 */
+	private static long ge(long ascii, int bound) {
+		return (ascii + (0x80 - bound) * ONES) & HIGH_BITS;
+	}
+
+	/**
+	 * Turns eight valid ASCII hexadecimal digits into the 32 bits they stand for.
+	 */
+	private static long pack(long ascii) {
+		// Letters are the bytes with 0x40 set; their low nibble is 9 short of their value
+		long letters = (ascii >>> 6) & ONES;
+		long v = (ascii & LOW_NIBBLES) + letters * 9;
+		v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+		return (v | (v >>> 16)) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Appends eight ASCII digits packed big-endian into a long.
+	 */
+	private static void append(StringBuilder out, long ascii) {
+		for (int shift = 56; shift >= 0; shift -= 8)
+			out.append((char) ((ascii >>> shift) & 0xFF));
+	}
+
+	/**
+	 * Turns 32 bits into eight ASCII hexadecimal digits, most significant first.
+	 */
+	private static long spread(int bits, boolean upper) {
+		long v = bits & 0xFFFFFFFFL;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v << 4)) & LOW_NIBBLES;
+		// Nibbles of 10 and up reach 16 when 6 is added
+		long letters = ((v + 6 * ONES) >>> 4) & ONES;
+		return v + '0' * ONES + letters * (upper ? 'A' - '0' - 10 : 'a' - '0' - 10);
+	}
+}
@@ -0,0 +1,52 @@
+package org.cooltrainer.xval;
+
+import java.io.PrintStream;
+
+/**
+ * Sends {@link CoolLog} messages to standard error, for batch runs off Android.
+ *
+ * Levels are set with system properties, by name or number:
+ * xval.log.level for every tag (INFO if unset) and xval.log.level.TAG
+ * for one tag.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+class JvmLogBackend implements LogBackend {
+	private static final String PROPERTY = "xval.log.level";
+	private static final String[] NAMES = { "", "", "VERBOSE", "DEBUG", "INFO", "WARN", "ERROR", "ASSERT" };
+	private static final char[] LETTERS = { '?', '?', 'V', 'D', 'I', 'W', 'E', 'A' };
+
+	private final PrintStream out = System.err;
+
+	public boolean isLoggable(String tag, int level) {
+		String setting = System.getProperty(PROPERTY + "." + tag);
+		if (setting == null)
+			setting = System.getProperty(PROPERTY);
+		return level >= parseLevel(setting);
+	}
+
+	public void println(int level, String tag, String msg, Throwable tr) {
+		char letter = (level >= 0 && level < LETTERS.length) ? LETTERS[level] : '?';
+		synchronized (this.out) {
+			this.out.println(letter + "/" + tag + ": " + msg);
+			if (tr != null)
+				tr.printStackTrace(this.out);
+		}
+	}
+
+	private static int parseLevel(String setting) {
+		if (setting == null)
+			return CoolLog.INFO;
+		setting = setting.trim();
+		for (int level = CoolLog.VERBOSE; level < NAMES.length; level++) {
+			if (NAMES[level].equalsIgnoreCase(setting) || setting.equalsIgnoreCase(String.valueOf(LETTERS[level])))
+				return level;
+		}
+		try {
+			return Integer.parseInt(setting);
+		} catch (NumberFormatException e) {
+			return CoolLog.INFO;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package org.cooltrainer.xval;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, for reporting latency
+ * percentiles from many threads at once.
+ *
+ * Buckets are log-linear: every power of two is split into sixteen equal
+ * buckets, so any recorded value is reported to within about 6% while the
+ * whole range of a long fits in 960 counters. Recording is one atomic
+ * increment; percentiles are read without stopping recorders, so a read
+ * taken while values are being recorded may be off by those values.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class LatencyHistogram {
+	/** Sub-buckets per power of two, as a power of two */
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanos			Duration in nanoseconds; negative values count as zero
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		this.counts.incrementAndGet(bucket(nanos));
+		this.total.incrementAndGet();
+
+		long seen = this.max.get();
+		while (nanos > seen && !this.max.compareAndSet(seen, nanos))
+			seen = this.max.get();
+	}
+
+	/**
+	 * @return				Durations recorded
+	 */
+	public long getCount() {
+		return this.total.get();
+	}
+
+	/**
+	 * @return				Longest duration recorded, in nanoseconds
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @param percentile	Percentile to find, 0 through 100
+	 * @return				Nanoseconds that percentile of durations didn't exceed, or 0 if none were recorded
+	 */
+	public long getPercentile(double percentile) {
+		long count = this.total.get();
+		if (count == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), this.max.get());
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Forgets every recorded duration.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			this.counts.set(i, 0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	/**
+	 * Adds another histogram's durations to this one.
+	 *
+	 * @param other			Histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = other.counts.get(i);
+			if (count != 0)
+				this.counts.addAndGet(i, count);
+		}
+		this.total.addAndGet(other.total.get());
+
+		long otherMax = other.max.get();
+		long seen = this.max.get();
+		while (otherMax > seen && !this.max.compareAndSet(seen, otherMax))
+			seen = this.max.get();
+	}
+
+	public String toString() {
+		return getCount() + " samples: p50 " + getPercentile(50) / 1000 + " us, p90 " + getPercentile(90) / 1000
+				+ " us, p99 " + getPercentile(99) / 1000 + " us, max " + getMax() / 1000 + " us";
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long width = 1L << (exponent - SUB_BITS);
+		return ((SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) * width) + width - 1;
+	}
+}
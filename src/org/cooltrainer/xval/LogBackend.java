@@ -0,0 +1,27 @@
+package org.cooltrainer.xval;
+
+/**
+ * Where {@link CoolLog} sends messages: Android's Log on a device, or
+ * standard error on a plain JVM.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+interface LogBackend {
+	/**
+	 * @param tag			Log tag
+	 * @param level			One of the CoolLog level constants
+	 * @return				true if messages at that level are wanted for the tag
+	 */
+	boolean isLoggable(String tag, int level);
+
+	/**
+	 * Writes one message. Called after isLoggable, so it needn't check again.
+	 *
+	 * @param level			One of the CoolLog level constants
+	 * @param tag			Log tag
+	 * @param msg			Message
+	 * @param tr			Exception to log with it, or null
+	 */
+	void println(int level, String tag, String msg, Throwable tr);
+}
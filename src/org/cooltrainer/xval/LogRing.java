@@ -0,0 +1,224 @@
+package org.cooltrainer.xval;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed-size ring of pending {@link CoolLog} messages, written by any
+ * number of threads and drained by one background thread that formats
+ * and writes them.
+ *
+ * Logging threads never wait: a slot is claimed with one compare-and-set
+ * and filled in place, and when the ring is full the message is dropped
+ * and counted instead. Slots are allocated once, so queueing a message
+ * allocates nothing.
+ *
+ * The writer parks with no timeout while the ring is empty, and a logging
+ * thread only wakes it when it has said it's going to sleep, so an idle
+ * ring costs no wakeups at all. Once a ring is closed, nothing more can be
+ * queued on it; later messages go to its successor, or straight to the
+ * backend if there is none. A successor's writer is running before its
+ * predecessor is closed, but writes nothing until the predecessor has
+ * written all it holds, so messages keep their order across a swap.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+class LogRing implements Runnable {
+	/** How often {@link #flush()} checks whether the writer has caught up */
+	private static final long FLUSH_POLL_NANOS = 1000000;
+
+	/** Set in tail once the ring is closed, so no more sequence numbers can be claimed */
+	private static final long CLOSED = 1L << 62;
+
+	private final LogBackend backend;
+	private final int mask;
+
+	private final int[] levels;
+	private final String[] tags;
+	private final Object[] messages;
+	private final Object[][] args;
+	private final Throwable[] throwables;
+	/** Sequence number + 1 of the message in each slot, once it is fully written */
+	private final AtomicLongArray published;
+
+	/** Next sequence number to claim, plus {@link #CLOSED} once closed */
+	private final AtomicLong tail = new AtomicLong();
+	/** Next sequence number to write out; only the writer thread advances it */
+	private volatile long head;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Set by the writer just before it parks */
+	private volatile boolean sleeping;
+	/** Where messages go once this ring is closed, or null for the backend */
+	private volatile LogRing successor;
+	/** Ring to wait for before writing anything, until it's done */
+	private volatile LogRing predecessor;
+	private final Thread writer;
+
+	/**
+	 * @param backend		Where to write messages
+	 * @param capacity		Messages held at most, rounded up to a power of two
+	 * @param predecessor	Ring this one replaces, to be closed with this one as its successor, or null
+	 */
+	LogRing(LogBackend backend, int capacity, LogRing predecessor) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.backend = backend;
+		this.mask = size - 1;
+		this.levels = new int[size];
+		this.tags = new String[size];
+		this.messages = new Object[size];
+		this.args = new Object[size][];
+		this.throwables = new Throwable[size];
+		this.published = new AtomicLongArray(size);
+		this.predecessor = predecessor;
+
+		this.writer = new Thread(this, "CoolLog-writer");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * Starts writing messages out, once the predecessor has written all of
+	 * its own. Until then they're only queued.
+	 */
+	void start() {
+		this.writer.start();
+	}
+
+	/**
+	 * Queues a message without waiting.
+	 *
+	 * @param message		A String, a {@link CoolLog.Message}, or a format String for args
+	 * @param args			Format arguments, or null
+	 * @return				false if the ring was full and the message was dropped
+	 */
+	boolean offer(int level, String tag, Object message, Object[] args, Throwable tr) {
+		long sequence;
+		do {
+			sequence = this.tail.get();
+			if ((sequence & CLOSED) != 0)
+				return forward(level, tag, message, args, tr);
+			if (sequence - this.head > this.mask) {
+				this.dropped.incrementAndGet();
+				return false;
+			}
+		} while (!this.tail.compareAndSet(sequence, sequence + 1));
+
+		int slot = (int) sequence & this.mask;
+		this.levels[slot] = level;
+		this.tags[slot] = tag;
+		this.messages[slot] = message;
+		this.args[slot] = args;
+		this.throwables[slot] = tr;
+		this.published.set(slot, sequence + 1);
+		if (this.sleeping)
+			LockSupport.unpark(this.writer);
+		return true;
+	}
+
+	/**
+	 * Passes on a message offered after this ring was closed.
+	 */
+	private boolean forward(int level, String tag, Object message, Object[] args, Throwable tr) {
+		LogRing successor = this.successor;
+		if (successor != null)
+			return successor.offer(level, tag, message, args, tr);
+		// Logging on the calling thread from now on, but not ahead of what's still queued
+		flush();
+		this.backend.println(level, tag, CoolLog.format(message, args), tr);
+		return true;
+	}
+
+	/**
+	 * @return				Messages dropped because the ring was full
+	 */
+	long getDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Waits until every message queued so far has been written.
+	 */
+	void flush() {
+		long target = this.tail.get() & ~CLOSED;
+		while (this.head < target && this.writer.isAlive())
+			LockSupport.parkNanos(FLUSH_POLL_NANOS);
+	}
+
+	/**
+	 * Stops taking messages, writes out what's queued and stops the writer
+	 * thread. Messages offered from now on are passed to the successor.
+	 *
+	 * @param successor		Ring to pass later messages to, or null to write them on the calling thread
+	 */
+	void close(LogRing successor) {
+		this.successor = successor;
+		long sequence;
+		do {
+			sequence = this.tail.get();
+		} while ((sequence & CLOSED) == 0 && !this.tail.compareAndSet(sequence, sequence | CLOSED));
+		LockSupport.unpark(this.writer);
+		flush();
+	}
+
+	/**
+	 * Waits until the writer has written everything and stopped, which
+	 * happens only once the ring is closed.
+	 */
+	private void awaitDrained() {
+		boolean interrupted = false;
+		while (this.writer.isAlive()) {
+			try {
+				this.writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	public void run() {
+		LogRing predecessor = this.predecessor;
+		if (predecessor != null) {
+			// Its messages were all queued before any of ours, so they go out first
+			predecessor.awaitDrained();
+			this.predecessor = null;
+		}
+
+		long sequence = this.head;
+		while (true) {
+			int slot = (int) sequence & this.mask;
+			if (this.published.get(slot) != sequence + 1) {
+				long tail = this.tail.get();
+				if ((tail & CLOSED) != 0 && sequence == (tail & ~CLOSED))
+					return;
+				// Say so before looking again, so an offer either is seen here or sees this and unparks
+				this.sleeping = true;
+				if (this.published.get(slot) != sequence + 1 && (this.tail.get() & CLOSED) == 0)
+					LockSupport.park(this);
+				this.sleeping = false;
+				continue;
+			}
+
+			int level = this.levels[slot];
+			String tag = this.tags[slot];
+			Object message = this.messages[slot];
+			Object[] args = this.args[slot];
+			Throwable tr = this.throwables[slot];
+			this.tags[slot] = null;
+			this.messages[slot] = null;
+			this.args[slot] = null;
+			this.throwables[slot] = null;
+
+			try {
+				this.backend.println(level, tag, CoolLog.format(message, args), tr);
+			} catch (RuntimeException e) {
+				// A bad format or message must not stop the writer
+				this.backend.println(CoolLog.ERROR, "CoolLog", "Couldn't log message for " + tag + ": " + e, null);
+			}
+			this.head = ++sequence;
+		}
+	}
+}
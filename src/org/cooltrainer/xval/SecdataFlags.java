@@ -0,0 +1,255 @@
+package org.cooltrainer.xval;
+
+/**
+ * The SecdataFlags class gives typed access to the secdata.bin flags
+ * recorded in a decrypted 'X' value.
+ *
+ * Flags are tested with bitmask constants, so queries are constant-time and
+ * filtering doesn't need to parse {@link XVal#flags()} strings back apart.
+ * Descriptions come from a table with one interned String per combination of
+ * the twelve known flags plus the unknown-flags marker. Each is built the
+ * first time it's asked for and shared after that.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class SecdataFlags {
+	public static final int AUTH_EX_FAILURE = 0x0001;
+	public static final int AUTH_EX_NO_TABLE = 0x0002;
+	public static final int AUTH_EX_RESERVED = 0x0004;
+	public static final int INVALID_DVD_GEOMETRY = 0x0008;
+	public static final int INVALID_DVD_DMI = 0x0010;
+	public static final int DVD_KEYVAULT_PAIR_MISMATCH = 0x0020;
+	public static final int CRL_DATA_INVALID = 0x0040;
+	public static final int CRL_CERTIFICATE_REVOKED = 0x0080;
+	public static final int UNAUTHORIZED_INSTALL = 0x0100;
+	public static final int KEYVAULT_POLICY_VIOLATION = 0x0200;
+	public static final int CONSOLE_BANNED = 0x0400;
+	public static final int ODD_VIOLATION = 0x0800;
+
+	/** Every flag with a known meaning */
+	public static final int KNOWN_FLAGS = 0x0FFF;
+
+	/** Flags with no known meaning */
+	public static final int UNKNOWN_FLAGS = 0xFFFFF000;
+
+	/** Set in a compact mask when the low word has flags with no known meaning */
+	public static final int COMPACT_UNKNOWN = 0x1000;
+
+	/** Set in a compact mask when the high word is nonzero */
+	public static final int COMPACT_HIGH_WORD = 0x2000;
+
+	private static final String[] LABELS = {
+		"AuthEx (AP25) Challenge Failure",
+		"AuthEx (AP25) Table Missing",
+		"AuthEx (AP25) Reserved Flag",
+		"Invalid DVD Geometry",
+		"Invalid DVD DMI",
+		"DVD Keyvault Pair Mismatch",
+		"Invalid CRL Data",
+		"CRL Certificate Revoked",
+		"Unauthorized Install",
+		"KeyVault Policy Violation",
+		"Console Banned",
+		"ODD Violation"
+	};
+	private static final String UNKNOWN_LABEL = "Unknown Violation(s)";
+
+	private static final String CLEAN = "Secdata clean";
+	private static final String INVALID = "Secdata invalid";
+	private static final String DECRYPTION_ERROR = "Secdata decryption error";
+
+	/** Index bit marking unknown flags in {@link #descriptions} */
+	private static final int UNKNOWN_INDEX = KNOWN_FLAGS + 1;
+
+	/** Description of each known flag combination, with and without unknown flags */
+	private static final String[] descriptions = new String[UNKNOWN_INDEX << 1];
+
+	private final int lowXval, highXval;
+
+	private SecdataFlags(int lowXval, int highXval) {
+		this.lowXval = lowXval;
+		this.highXval = highXval;
+	}
+
+	/**
+	 * @param lowXval			Low word of a decrypted 'X' value
+	 * @param highXval			High word of a decrypted 'X' value
+	 * @return					Flags recorded in that 'X' value
+	 */
+	public static SecdataFlags valueOf(int lowXval, int highXval) {
+		return new SecdataFlags(lowXval, highXval);
+	}
+
+	/**
+	 * @param decrypted			Decrypted 'X' value, big-endian: high word, then low word
+	 * @return					Flags recorded in that 'X' value
+	 */
+	public static SecdataFlags valueOf(long decrypted) {
+		return new SecdataFlags((int) decrypted, (int) (decrypted >>> 32));
+	}
+
+	/**
+	 * @return					true if no flags are recorded
+	 */
+	public boolean isClean() {
+		return this.lowXval == 0 && this.highXval == 0;
+	}
+
+	/**
+	 * @return					true if the 'X' value and serial number belong together; see {@link XVal#isValidPair()}
+	 */
+	public boolean isValidPair() {
+		return !(this.lowXval != 0 && this.highXval != 0);
+	}
+
+	/**
+	 * @return					true if the console is banned
+	 */
+	public boolean isBanned() {
+		return has(CONSOLE_BANNED);
+	}
+
+	/**
+	 * @param flags				One or more flag constants
+	 * @return					true if this is a valid pair and any of the given flags are recorded
+	 */
+	public boolean has(int flags) {
+		return isValidPair() && (this.lowXval & flags) != 0;
+	}
+
+	/**
+	 * @return					Recorded flags as a mask of the flag constants, 0 for an invalid pair
+	 */
+	public int getMask() {
+		return isValidPair() ? this.lowXval : 0;
+	}
+
+	/**
+	 * @return					These flags as a compact mask; see {@link #compactMask(long)}
+	 */
+	public int getCompactMask() {
+		return compactMask(this.lowXval, this.highXval);
+	}
+
+	/**
+	 * @return					Low word of the decrypted 'X' value
+	 */
+	public int getLowXVal() {
+		return this.lowXval;
+	}
+
+	/**
+	 * @return					High word of the decrypted 'X' value
+	 */
+	public int getHighXVal() {
+		return this.highXval;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof SecdataFlags))
+			return false;
+		SecdataFlags other = (SecdataFlags) o;
+		return this.lowXval == other.lowXval && this.highXval == other.highXval;
+	}
+
+	public int hashCode() {
+		return this.lowXval * 31 + this.highXval;
+	}
+
+	/**
+	 * Displays these flags in human-readable form; see {@link #describe(int, int)}.
+	 */
+	public String toString() {
+		return describe(this.lowXval, this.highXval);
+	}
+
+	/**
+	 * Summarizes a decrypted 'X' value in sixteen bits, for storage.
+	 * Bits 0 through 11 are the known flags in the low word,
+	 * {@link #COMPACT_UNKNOWN} marks any other low word flags and
+	 * {@link #COMPACT_HIGH_WORD} marks a nonzero high word. Zero means clean,
+	 * and a high word bit together with any low word bit means an invalid pair.
+	 *
+	 * @param decrypted			Decrypted 'X' value, big-endian: high word, then low word
+	 * @return					Compact mask
+	 */
+	public static int compactMask(long decrypted) {
+		return compactMask((int) decrypted, (int) (decrypted >>> 32));
+	}
+
+	private static int compactMask(int lowXval, int highXval) {
+		return (lowXval & KNOWN_FLAGS)
+				| ((lowXval & UNKNOWN_FLAGS) != 0 ? COMPACT_UNKNOWN : 0)
+				| (highXval != 0 ? COMPACT_HIGH_WORD : 0);
+	}
+
+	/**
+	 * Tests a compact mask for a valid pair; see {@link #isValidPair()}.
+	 *
+	 * @param compactMask		Mask from {@link #compactMask(long)}
+	 * @return					true if the 'X' value it summarizes belongs with its serial number
+	 */
+	public static boolean isValidPair(int compactMask) {
+		return (compactMask & COMPACT_HIGH_WORD) == 0 || (compactMask & (KNOWN_FLAGS | COMPACT_UNKNOWN)) == 0;
+	}
+
+	/**
+	 * Displays secdata.bin flags in human-readable form. The same 'X' value
+	 * always gets the same String instance back.
+	 *
+	 * @param decrypted			Decrypted 'X' value, big-endian: high word, then low word
+	 * @return					String of flags in X value, or 'clean' otherwise
+	 */
+	public static String describe(long decrypted) {
+		return describe((int) decrypted, (int) (decrypted >>> 32));
+	}
+
+	/**
+	 * Displays secdata.bin flags in human-readable form. The same 'X' value
+	 * always gets the same String instance back.
+	 *
+	 * @param lowXval			Low word of a decrypted 'X' value
+	 * @param highXval			High word of a decrypted 'X' value
+	 * @return					String of flags in X value, or 'clean' otherwise
+	 */
+	public static String describe(int lowXval, int highXval) {
+		if (highXval == 0 && lowXval == 0)
+			return CLEAN;
+		if (highXval == 0xFFFFFFFF && lowXval == 0xFFFFFFFF)
+			return INVALID;
+		if (highXval != 0 && lowXval != 0)
+			return DECRYPTION_ERROR;
+
+		int index = (lowXval & KNOWN_FLAGS) | ((lowXval & UNKNOWN_FLAGS) != 0 ? UNKNOWN_INDEX : 0);
+		String description = descriptions[index];
+		if (description == null) {
+			// Strings are immutable, so a racing thread building the same entry is harmless
+			description = buildDescription(index);
+			descriptions[index] = description;
+		}
+		return description;
+	}
+
+	/**
+	 * Builds every description ahead of time, so later calls to
+	 * {@link #describe(int, int)} never allocate.
+	 */
+	static void prepareDescriptions() {
+		for (int index = 0; index < descriptions.length; index++) {
+			if (descriptions[index] == null)
+				descriptions[index] = buildDescription(index);
+		}
+	}
+	
+	private static String buildDescription(int index) {
+		StringBuilder flags = new StringBuilder();
+		for (int bit = 0; bit < LABELS.length; bit++) {
+			if ((index & (1 << bit)) != 0)
+				flags.append(LABELS[bit]);
+		}
+		if ((index & UNKNOWN_INDEX) != 0)
+			flags.append(UNKNOWN_LABEL);
+		return flags.toString().intern();
+	}
+}
@@ -2,6 +2,7 @@ package org.cooltrainer.xval;
 
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
 import java.security.spec.InvalidKeySpecException;
 
 import javax.crypto.Cipher;
@@ -21,22 +22,48 @@ import javax.crypto.spec.SecretKeySpec;
  * @since 2012-06-23
  */
 public class XVal {
-	private static int FLAG_SSB_AUTH_EX_FAILURE = 0x0001;
-	private static int FLAG_SSB_AUTH_EX_NO_TABLE = 0x0002;
-	private static int FLAG_SSB_AUTH_EX_RESERVED = 0x0004;
-	private static int FLAG_SSB_INVALID_DVD_GEOMETRY = 0x0008;
-	private static int FLAG_SSB_INVALID_DVD_DMI = 0x0010;
-	private static int FLAG_SSB_DVD_KEYVAULT_PAIR_MISMATCH = 0x0020;
-	private static int FLAG_SSB_CRL_DATA_INVALID = 0x0040;
-	private static int FLAG_SSB_CRL_CERTIFICATE_REVOKED = 0x0080;
-	private static int FLAG_SSB_UNAUTHORIZED_INSTALL = 0x0100;
-	private static int FLAG_SSB_KEYVAULT_POLICY_VIOLATION = 0x0200;
-	private static int FLAG_SSB_CONSOLE_BANNED = 0x0400;
-	private static int FLAG_SSB_ODD_VIOLATION = 0x0800;
-	
 	private static String ssb = "XBOX360SSB"; //Magic string
-	private byte[] decryptedXVal;
-	private int[] splitXVal;
+	
+	/** Decrypted X value, big-endian: high word, then low word */
+	private final long decryptedXVal;
+	
+	/**
+	 * JCE lookups are expensive next to the work they do for a single
+	 * eight-byte block, so each thread resolves its algorithms once
+	 * and reuses them for every subsequent decryption.
+	 */
+	private static final ThreadLocal<Crypto> threadCrypto = new ThreadLocal<Crypto>();
+	
+	/**
+	 * Providers found by the first thread to resolve each algorithm. Later
+	 * threads ask those providers directly instead of searching every
+	 * installed provider again.
+	 */
+	private static volatile Provider macProvider, keyFactoryProvider, cipherProvider;
+	
+	/**
+	 * Holds one thread's resolved Mac, SecretKeyFactory and Cipher instances.
+	 * None of these are thread-safe, so an instance must never be shared.
+	 */
+	private static class Crypto {
+		final Mac mac;
+		final SecretKeyFactory keyFactory;
+		final Cipher cipher;
+		
+		Crypto() throws NoSuchAlgorithmException, javax.crypto.NoSuchPaddingException {
+			Provider provider = macProvider;
+			this.mac = (provider == null) ? Mac.getInstance("HmacSHA1") : Mac.getInstance("HmacSHA1", provider);
+			macProvider = this.mac.getProvider();
+			
+			provider = keyFactoryProvider;
+			this.keyFactory = (provider == null) ? SecretKeyFactory.getInstance("DES") : SecretKeyFactory.getInstance("DES", provider);
+			keyFactoryProvider = this.keyFactory.getProvider();
+			
+			provider = cipherProvider;
+			this.cipher = (provider == null) ? Cipher.getInstance("DES/ECB/NoPadding") : Cipher.getInstance("DES/ECB/NoPadding", provider);
+			cipherProvider = this.cipher.getProvider();
+		}
+	}
 	
 	/**
 	 * 
@@ -45,8 +72,31 @@ public class XVal {
 	 * @throws XValException	On decryption error
 	 */
 	public XVal(String serial, String xval) throws XValException {
-		this.decryptedXVal = DecryptXVal(serial, xval);
-		this.splitXVal = splitXVal(this.decryptedXVal);
+		this.decryptedXVal = decrypt(serial, xval, null);
+	}
+	
+	/**
+	 * Decrypts a pair using a cache of derived keys, so a serial number seen
+	 * recently skips key derivation. Keys are only cached for serial numbers
+	 * of twelve numeric digits; any other serial is decrypted through JCE, as
+	 * {@link #XVal(String, String)} would.
+	 * 
+	 * @param serial			An Xbox 360 serial number, 12 numeric digits.
+	 * @param xval				An 'X' value from the same console, 16 hexadecimal digits
+	 * @param keyCache			Cache of derived keys, or null to decrypt without one
+	 * @throws XValException	On decryption error
+	 */
+	public XVal(String serial, String xval, XValKeyCache keyCache) throws XValException {
+		this.decryptedXVal = decrypt(serial, xval, keyCache);
+	}
+	
+	/**
+	 * Wraps an already-decrypted X value, as produced by {@link XValKernel}.
+	 * 
+	 * @param decryptedXVal		Decrypted X value, big-endian: high word, then low word
+	 */
+	XVal(long decryptedXVal) {
+		this.decryptedXVal = decryptedXVal;
 	}
 	
 	/**
@@ -57,7 +107,7 @@ public class XVal {
 	 * @return		true if instantiated serial + xval match, false if not
 	 */
 	public boolean isValidPair() {
-		return !(this.splitXVal[0] != 0 && this.splitXVal[1] != 0);
+		return isValidPair(this.decryptedXVal);
 	}
 	
 	/**
@@ -69,7 +119,27 @@ public class XVal {
 	 * @return		True if this X value is clean, false if it is flagged
 	 */
 	public boolean isClean() {
-		return (this.splitXVal[0] == 0 && this.splitXVal[1] == 0);
+		return isClean(this.decryptedXVal);
+	}
+	
+	/**
+	 * Validates a decrypted X value in its packed form; see {@link #isValidPair()}.
+	 * 
+	 * @param decrypted		Decrypted 'X' value, big-endian: high word, then low word
+	 * @return				true if the serial + xval it came from match, false if not
+	 */
+	public static boolean isValidPair(long decrypted) {
+		return !((int) decrypted != 0 && (int) (decrypted >>> 32) != 0);
+	}
+	
+	/**
+	 * Gives quick pass or fail status of a decrypted X value in its packed form; see {@link #isClean()}.
+	 * 
+	 * @param decrypted		Decrypted 'X' value, big-endian: high word, then low word
+	 * @return				True if this X value is clean, false if it is flagged
+	 */
+	public static boolean isClean(long decrypted) {
+		return decrypted == 0;
 	}
 	
 	/**
@@ -78,14 +148,38 @@ public class XVal {
 	 * @return		secdata.bin flags recorded in the instantiated X value
 	 */
 	public String flags() {
-		return flags(this.splitXVal);
+		long start = XValMetrics.start();
+		String flags = SecdataFlags.describe(this.decryptedXVal);
+		XValMetrics.stop(XValMetrics.FLAGS, start);
+		return flags;
+	}
+	
+	/**
+	 * Gives the decrypted 'X' value in its packed form.
+	 * 
+	 * @return		Decrypted X value, big-endian: high word, then low word
+	 */
+	public long getDecrypted() {
+		return this.decryptedXVal;
+	}
+	
+	/**
+	 * Gives this instance's secdata.bin flags in a form that can be queried.
+	 * 
+	 * @return		secdata.bin flags recorded in the instantiated X value
+	 */
+	public SecdataFlags getFlags() {
+		long start = XValMetrics.start();
+		SecdataFlags flags = SecdataFlags.valueOf(this.decryptedXVal);
+		XValMetrics.stop(XValMetrics.FLAGS, start);
+		return flags;
 	}
 	
 	/**
 	 * Prints the decrypted 'X' Value for an instance of this class.
 	 */
 	public String toString() {
-		return bytesToHex(this.decryptedXVal);
+		return bytesToHex(longToBytes(this.decryptedXVal));
 	}
     
 	/**
@@ -94,13 +188,18 @@ public class XVal {
 	 * @param in		A one-dimensional byte array
 	 * @return			A hexadecimal String object representing the contents of the input
 	 */
-	private static String bytesToHex(byte[] in) {
-		StringBuilder sb = new StringBuilder(in.length * 2);
-		for (int i = 0; i < in.length; i++) {
+	static String bytesToHex(byte[] in) {
+		// Same as String.format("%#04x ") per byte, without parsing a format each time
+		char[] out = new char[in.length * 5];
+		for (int i = 0, at = 0; i < in.length; i++) {
 			int val = in[i] & 0xff;
-			sb.append(String.format("%#04x ", val));
+			out[at++] = '0';
+			out[at++] = 'x';
+			out[at++] = HexCodec.LOWER[val >>> 4];
+			out[at++] = HexCodec.LOWER[val & 0xF];
+			out[at++] = ' ';
 		}
-		return sb.toString();
+		return new String(out);
 	}
 
 	/**
@@ -109,13 +208,8 @@ public class XVal {
 	 * @param in		A hexadecimal String, "^[0-9A-F]$"
 	 * @return			A byte array representing the contents of the input
 	 */
-	private static byte[] hexToBytes(String in) {
-		int len = in.length();
-		byte[] bytes = new byte[len / 2];
-		for (int i = 0; i < len; i += 2) {
-			bytes[i / 2] = (byte) ((Character.digit(in.charAt(i), 16) << 4) + Character.digit(in.charAt(i + 1), 16));
-		}
-		return bytes;
+	static byte[] hexToBytes(String in) {
+		return HexCodec.decode(in);
 	}
 
 	/**
@@ -134,6 +228,46 @@ public class XVal {
 		return value;
 	}
 
+	/**
+	 * Parses an encrypted 'X' value string
+	 * 
+	 * @param xval				Sixteen hexadecimal digits, dashes optional
+	 * @return					The 'X' value as a big-endian long
+	 * @throws XValException	If xval isn't sixteen hexadecimal digits
+	 */
+	private static long parseXVal(String xval) throws XValException {
+		long[] parsed = new long[1];
+		if (!XValParser.parseXVal(xval, parsed, 0))
+			throw XValMetrics.error(new XValException("XVal must be sixteen hexadecimal digits"));
+		return parsed[0];
+	}
+	
+	/**
+	 * Converts a section of a byte array to a long
+	 * 
+	 * @param b			An input byte array
+	 * @param offset	The start index of eight big-endian bytes
+	 * @return			A long representation of the eight bytes in b following offset
+	 */
+	private static long bytesToLong(byte[] b, int offset) {
+		return ((long) bytesToInt(b, offset) << 32) | (bytesToInt(b, offset + 4) & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Converts a long to a big-endian byte array
+	 * 
+	 * @param value		An input long
+	 * @return			The eight bytes of value, most significant first
+	 */
+	private static byte[] longToBytes(long value) {
+		byte[] bytes = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
 	/**
 	 * Decrypts a serial number / 'X' value pair
 	 * 
@@ -143,7 +277,7 @@ public class XVal {
 	 * @throws XValException
 	 */
 	public static byte[] DecryptXVal(String serial, String xval) throws XValException {
-		return DecryptXVal(serial, hexToBytes(xval.replace("-", "").toUpperCase()));
+		return DecryptXVal(serial, longToBytes(parseXVal(xval)));
 	}
 	
 	/**
@@ -155,51 +289,148 @@ public class XVal {
 	 * @throws XValException
 	 */
 	public static byte[] DecryptXVal(String serial, byte[] encryptedXval) throws XValException {
-		byte[] decryptedXval = null;
+		long start = XValMetrics.start();
+		byte[] decryptedXval = crypt(serial, Cipher.DECRYPT_MODE, encryptedXval);
+		XValMetrics.stop(XValMetrics.DECRYPT, start);
+		return decryptedXval;
+	}
+	
+	/**
+	 * Encrypts secdata words into the 'X' value a console with the given
+	 * serial number would display; the inverse of {@link #DecryptXVal(String, byte[])}.
+	 * 
+	 * @param serial			Console serial number
+	 * @param lowXval			Low word of the 'X' value, holding the secdata flags
+	 * @param highXval			High word of the 'X' value, zero for a valid pair
+	 * @return					A byte array representation of the encrypted 'X' value
+	 * @throws XValException
+	 */
+	public static byte[] EncryptXVal(String serial, int lowXval, int highXval) throws XValException {
+		return crypt(serial, Cipher.ENCRYPT_MODE, longToBytes(((long) highXval << 32) | (lowXval & 0xFFFFFFFFL)));
+	}
+	
+	/**
+	 * Encrypts or decrypts one block with a serial number's key
+	 * 
+	 * @param serial			Console serial number
+	 * @param mode				Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+	 * @param in				Eight-byte block
+	 * @return					The transformed block
+	 * @throws XValException
+	 */
+	private static byte[] crypt(String serial, int mode, byte[] in) throws XValException {
+		byte[] out = null;
 		serial += "\0"; // Zero-pad serial
 
 		try {
-			Mac mac = Mac.getInstance("HmacSHA1");
+			Crypto crypto = crypto();
+
 			SecretKeySpec secret = new SecretKeySpec(serial.getBytes(),	"HmacSHA1");
-			mac.init(secret);
-			byte[] digest = mac.doFinal(ssb.getBytes());
+			crypto.mac.init(secret);
+			byte[] digest = crypto.mac.doFinal(ssb.getBytes());
 
 			DESKeySpec desKeySpec = new DESKeySpec(digest);
-			SecretKeyFactory keyFactory = SecretKeyFactory.getInstance("DES");
-			SecretKey secretKey = keyFactory.generateSecret(desKeySpec);
+			SecretKey secretKey = crypto.keyFactory.generateSecret(desKeySpec);
 
-			Cipher cipher = Cipher.getInstance("DES/ECB/NoPadding");
-			cipher.init(Cipher.DECRYPT_MODE, secretKey);
-			decryptedXval = cipher.doFinal(encryptedXval);
+			crypto.cipher.init(mode, secretKey);
+			out = crypto.cipher.doFinal(in);
 		} catch (NoSuchAlgorithmException e) {
 			/* Thrown by Mac, SecretKeyFactory, and Cipher if "HmacSHA1", "DES", and "DES" (respectively)
 			   aren't available. This shouldn't happen. */
-			throw new XValException("A needed decryption algorithm isn't available in this JVM", e);
+			throw XValMetrics.error(new XValException("A needed decryption algorithm isn't available in this JVM", e));
 		} catch (InvalidKeyException e) {
 			/* Thrown by MAC.init if initialized with invalid key,
 			 * by DESKeySpec if instantiated with invalid digest,
 			 * or by Cipher.init if initialized with invalid secretKey
 			 */
-			throw new XValException(e);
+			throw XValMetrics.error(new XValException(e));
 		} catch (InvalidKeySpecException e) {
 			/* Thrown by SecretKeyFactory.generateKeySpec if used with invalid DES keySpec */
-			throw new XValException(e);
+			throw XValMetrics.error(new XValException(e));
 		} catch (javax.crypto.NoSuchPaddingException e) {
 			/* Thrown by Cipher.getInstance if instantiated with an unavailable padding
 			 * ("NoPadding" in our case). This shouldn't happen.
 			 */
-			throw new XValException("NoPadding for javax.crypto.Cipher is unavailable", e);
+			throw XValMetrics.error(new XValException("NoPadding for javax.crypto.Cipher is unavailable", e));
 		} catch (javax.crypto.BadPaddingException e) {
 			/* Thrown by Cipher.doFinal. Somewhat confusingly, this usually means we're trying to decrypt
 			 * with an incorrect key for our data or are using an incorrect Algo, Mode, or Padding.
 			 */
-			throw new XValException("Attempting to decrypt with incorrect key", e);
+			throw XValMetrics.error(new XValException("Attempting to decrypt with incorrect key", e));
 		} catch (IllegalBlockSizeException e) {
 			/* Thrown by Cipher.doFinal when its input isn't a multiple of eight bytes */
-			throw new XValException("XVal not a multiple of eight bytes", e);
+			throw XValMetrics.error(new XValException("XVal not a multiple of eight bytes", e));
 		}
 
-		return decryptedXval;
+		return out;
+	}
+	
+	/**
+	 * Decrypts a serial number / 'X' value pair with a cached key schedule,
+	 * or through JCE if the serial number isn't twelve numeric digits
+	 * 
+	 * @param serial			Console serial number
+	 * @param xval				Encrypted 'X' value
+	 * @param keyCache			Cache of derived keys
+	 * @return					The decrypted 'X' value, big-endian: high word, then low word
+	 * @throws XValException	If the 'X' value is malformed
+	 */
+	private static long decryptCached(String serial, String xval, XValKeyCache keyCache) throws XValException {
+		long packedSerial = XValParser.parseSerial(serial);
+		if (packedSerial == XValParser.INVALID_SERIAL)
+			return bytesToLong(DecryptXVal(serial, xval), 0); // The kernel only derives keys from twelve digits
+		
+		long encrypted = parseXVal(xval);
+		long start = XValMetrics.start();
+		XValKernel kernel = XValKernel.forCurrentThread();
+		long[] schedule = keyCache.schedule(packedSerial, kernel);
+		long decrypted = XValKernel.decrypt(schedule, encrypted);
+		XValMetrics.stop(XValMetrics.DECRYPT, start);
+		return decrypted;
+	}
+	
+	/**
+	 * Decrypts a pair for a new instance, counting and timing it in {@link XValMetrics}.
+	 * 
+	 * @param serial			Console serial number
+	 * @param xval				Encrypted 'X' value
+	 * @param keyCache			Cache of derived keys, or null to decrypt without one
+	 * @return					The decrypted 'X' value, big-endian: high word, then low word
+	 * @throws XValException	If the serial number or 'X' value is malformed
+	 */
+	private static long decrypt(String serial, String xval, XValKeyCache keyCache) throws XValException {
+		long start = XValMetrics.start();
+		long decrypted = (keyCache == null) ? bytesToLong(DecryptXVal(serial, xval), 0) : decryptCached(serial, xval, keyCache);
+		XValMetrics.stop(XValMetrics.CONSTRUCT, start);
+		XValMetrics.outcome(decrypted);
+		return decrypted;
+	}
+	
+	/**
+	 * Resolves the calling thread's crypto instances and runs them once
+	 * over a known pair, so the next decryption on this thread pays for
+	 * no provider lookup or class loading.
+	 * 
+	 * @throws XValException	If the algorithms aren't available
+	 */
+	static void warmUp() throws XValException {
+		DecryptXVal("000000000000", new byte[8]);
+	}
+	
+	/**
+	 * Gets the calling thread's crypto instances, resolving them on first use.
+	 * 
+	 * @return					This thread's Mac, SecretKeyFactory and Cipher
+	 * @throws NoSuchAlgorithmException
+	 * @throws javax.crypto.NoSuchPaddingException
+	 */
+	private static Crypto crypto() throws NoSuchAlgorithmException, javax.crypto.NoSuchPaddingException {
+		Crypto crypto = threadCrypto.get();
+		if (crypto == null) {
+			crypto = new Crypto();
+			threadCrypto.set(crypto);
+		}
+		return crypto;
 	}
 	
 	/**
@@ -234,46 +465,6 @@ public class XVal {
 	 * @return					String of flags in X value, or 'clean' otherwise
 	 */
 	public static String flags(int[] decryptedXval) {
-		int highXval = decryptedXval[1];
-		int lowXval = decryptedXval[0];
-		
-		StringBuilder flags = new StringBuilder();
-		if(highXval == 0 && lowXval == 0)
-			flags.append("Secdata clean");
-		else if(highXval == 0xFFFFFFFF && lowXval == 0xFFFFFFFF)
-			flags.append("Secdata invalid");
-		else if(highXval != 0 && lowXval != 0)
-			flags.append("Secdata decryption error");
-		else {
-			
-			if((lowXval & FLAG_SSB_AUTH_EX_FAILURE) != 0)
-				flags.append("AuthEx (AP25) Challenge Failure");
-			if((lowXval & FLAG_SSB_AUTH_EX_NO_TABLE) != 0)
-				flags.append("AuthEx (AP25) Table Missing");
-			if((lowXval & FLAG_SSB_AUTH_EX_RESERVED) != 0)
-				flags.append("AuthEx (AP25) Reserved Flag");
-			if((lowXval & FLAG_SSB_INVALID_DVD_GEOMETRY) != 0)
-				flags.append("Invalid DVD Geometry");
-			if((lowXval & FLAG_SSB_INVALID_DVD_DMI) != 0)
-				flags.append("Invalid DVD DMI");
-			if((lowXval & FLAG_SSB_DVD_KEYVAULT_PAIR_MISMATCH) != 0)
-				flags.append("DVD Keyvault Pair Mismatch");
-			if((lowXval & FLAG_SSB_CRL_DATA_INVALID) != 0)
-				flags.append("Invalid CRL Data");
-			if((lowXval & FLAG_SSB_CRL_CERTIFICATE_REVOKED) != 0)
-				flags.append("CRL Certificate Revoked");
-			if((lowXval & FLAG_SSB_UNAUTHORIZED_INSTALL) != 0)
-				flags.append("Unauthorized Install");
-			if((lowXval & FLAG_SSB_KEYVAULT_POLICY_VIOLATION) != 0)
-				flags.append("KeyVault Policy Violation");
-			if((lowXval & FLAG_SSB_CONSOLE_BANNED) != 0)
-				flags.append("Console Banned");
-			if((lowXval & FLAG_SSB_ODD_VIOLATION) != 0)
-				flags.append("ODD Violation");
-			if((lowXval & 0xFFFFF000) != 0)
-				flags.append("Unknown Violation(s)");
-		}
-		
-		return flags.toString();
+		return SecdataFlags.describe(decryptedXval[0], decryptedXval[1]);
 	}
 }
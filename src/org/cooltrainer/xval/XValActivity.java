@@ -3,6 +3,9 @@ package org.cooltrainer.xval;
 import android.app.Activity;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -10,11 +13,30 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class XValActivity extends Activity {
 	private EditText serial, xval;
 	private TextView mfgDateText, mfgDate, factoryText, factory, resultText, result, flags;
 	private static final String TAG = "XVal";
 	
+	/** How long typing has to pause before a complete serial and 'X' value are checked */
+	private static final long DEBOUNCE_MS = 100;
+	
+	private final Handler handler = new Handler();
+	private ExecutorService evaluator;
+	private Future<?> pending;
+	/** Bumped whenever input changes, so results of older checks are dropped */
+	private int generation;
+	
+	private final Runnable debounced = new Runnable() {
+		public void run() {
+			evaluate(serial.getText().toString(), xval.getText().toString());
+		}
+	};
+	
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -30,6 +52,40 @@ public class XValActivity extends Activity {
         resultText = (TextView)findViewById(R.id.resulttext);
         result = (TextView)findViewById(R.id.result);
         flags = (TextView)findViewById(R.id.flags);
+        
+        evaluator = Executors.newSingleThreadExecutor();
+        //Warm up on the thread that runs checks, so the first one is as fast as the rest
+        evaluator.submit(new Runnable() {
+            public void run() {
+                XValWarmUp.run(new XValWarmUp.Listener() {
+                    public void warmedUp(XValWarmUp warmUp) {
+                        CoolLog.d(TAG, "%s", warmUp);
+                    }
+                });
+            }
+        });
+        
+        TextWatcher watcher = new TextWatcher() {
+            public void afterTextChanged(Editable s) {
+                inputChanged();
+            }
+            
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+        };
+        serial.addTextChangedListener(watcher);
+        xval.addTextChangedListener(watcher);
+    }
+    
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacks(debounced);
+        cancel();
+        evaluator.shutdownNow();
+        super.onDestroy();
     }
     
     @Override
@@ -77,41 +133,118 @@ public class XValActivity extends Activity {
 				return;
 			}
 			
-			Xbox360 xbox = new Xbox360(inputSerial);
-			
-			try {
-				XVal xVal = new XVal(inputSerial, inputXVal);
-
-				if (xVal.isValidPair()) {
-					resultText.setText(String.valueOf(this.getString(R.string.thisconsoleis)));
-				} else {
-					resultText.setText(String.valueOf(this.getString(R.string.invalidPair)));
-					result.setText(String.valueOf(""));
-					mfgDateText.setText(String.valueOf(""));
-					mfgDate.setText(String.valueOf(""));
-					factoryText.setText(String.valueOf(""));
-					factory.setText(String.valueOf(""));
-					flags.setText(String.valueOf(""));
-					return;
-				}
+			handler.removeCallbacks(debounced);
+			evaluate(inputSerial, inputXVal);
+			break;
+		}
+	}
+	
+	/**
+	 * Schedules a check whenever both fields hold something that could be valid,
+	 * and clears any result that no longer matches what's typed.
+	 */
+	private void inputChanged() {
+		handler.removeCallbacks(debounced);
+		cancel();
+		if(Xbox360.validSerial(serial.getText().toString()) && Xbox360.validXVal(xval.getText().toString())) {
+			handler.postDelayed(debounced, DEBOUNCE_MS);
+		} else {
+			clearResult(R.string.thisconsoleis);
+		}
+	}
+	
+	/**
+	 * Starts checking a serial number and 'X' value in the background,
+	 * replacing any check already running.
+	 */
+	private void evaluate(final String inputSerial, final String inputXVal) {
+		cancel();
+		final int current = generation;
+		pending = evaluator.submit(new Runnable() {
+			public void run() {
+				final Evaluation evaluation = new Evaluation(inputSerial, inputXVal);
+				handler.post(new Runnable() {
+					public void run() {
+						//Input changed while this was running; a newer check will report instead
+						if(current == generation) {
+							pending = null;
+							show(evaluation);
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Abandons the running check, if any. Only called on the UI thread.
+	 */
+	private void cancel() {
+		generation++;
+		if(pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+	
+	private void show(Evaluation evaluation) {
+		if(evaluation.error != null) {
+			CoolLog.e(TAG, evaluation.error.getMessage(), evaluation.error);
+			return;
+		}
+		
+		XVal xVal = evaluation.xVal;
+		if (xVal.isValidPair()) {
+			resultText.setText(String.valueOf(this.getString(R.string.thisconsoleis)));
+		} else {
+			clearResult(R.string.invalidPair);
+			return;
+		}
 
-				int tagColour = (xVal.isClean()) ? Color.GREEN : Color.RED;
-				int tag = (xVal.isClean()) ? R.string.clean : R.string.flagged;
+		int tagColour = (xVal.isClean()) ? Color.GREEN : Color.RED;
+		int tag = (xVal.isClean()) ? R.string.clean : R.string.flagged;
 
-				mfgDateText.setText(String.valueOf(this.getString(R.string.mfgdate)));
-				mfgDate.setText(String.valueOf(this.getString(R.string.weekof) + " " + xbox.mfgDate()));
-				factoryText.setText(String.valueOf(this.getString(R.string.factory)));
-				factory.setText(String.valueOf(xbox.factoryName()));
+		mfgDateText.setText(String.valueOf(this.getString(R.string.mfgdate)));
+		mfgDate.setText(String.valueOf(this.getString(R.string.weekof) + " " + evaluation.mfgDate));
+		factoryText.setText(String.valueOf(this.getString(R.string.factory)));
+		factory.setText(String.valueOf(evaluation.factoryName));
 
-				flags.setText(String.valueOf(xVal.flags()));
+		flags.setText(String.valueOf(evaluation.flags));
 
-				result.setText(this.getString(tag));
-				result.setTextColor(tagColour);
+		result.setText(this.getString(tag));
+		result.setTextColor(tagColour);
+	}
+	
+	private void clearResult(int resultTextId) {
+		resultText.setText(String.valueOf(this.getString(resultTextId)));
+		result.setText(String.valueOf(""));
+		mfgDateText.setText(String.valueOf(""));
+		mfgDate.setText(String.valueOf(""));
+		factoryText.setText(String.valueOf(""));
+		factory.setText(String.valueOf(""));
+		flags.setText(String.valueOf(""));
+	}
+	
+	/**
+	 * Everything shown for one serial number and 'X' value, worked out
+	 * off the UI thread: decryption, flags and the Calendar and Locale
+	 * lookups behind the manufacture date and factory name.
+	 */
+	private static class Evaluation {
+		XVal xVal;
+		String flags, mfgDate, factoryName;
+		XValException error;
+		
+		Evaluation(String inputSerial, String inputXVal) {
+			try {
+				this.xVal = new XVal(inputSerial, inputXVal);
+				this.flags = this.xVal.flags();
+				Xbox360 xbox = new Xbox360(inputSerial);
+				this.mfgDate = xbox.mfgDate();
+				this.factoryName = xbox.factoryName();
 			} catch (XValException e) {
-				CoolLog.e(TAG, e.getMessage(), e);
+				this.error = e;
 			}
-
-			break;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,284 @@
+package org.cooltrainer.xval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The XValArchiveReader class reads archives written by {@link XValArchiveWriter}.
+ *
+ * Blocks are memory-mapped. Records are read through a {@link Cursor},
+ * a flyweight that reads each field straight out of the current block, so
+ * a scan makes no object per record. Blocks stored without compression are
+ * read in place; deflated ones are inflated into a buffer the cursor keeps.
+ *
+ * A reader may be shared between threads, each with its own cursors.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValArchiveReader {
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int recordsPerBlock;
+	private final long records;
+
+	/** Per block: file offset, stored length, record count and first record number */
+	private final long[] offsets, firstRecords;
+	private final int[] storedLengths, counts;
+
+	/**
+	 * Opens an archive.
+	 *
+	 * @param file				Archive file
+	 * @throws IOException		If the file can't be read or isn't a finished archive
+	 */
+	public XValArchiveReader(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			this.channel = this.file.getChannel();
+			long size = this.channel.size();
+			if (size < XValArchiveWriter.HEADER + XValArchiveWriter.TRAILER)
+				throw new IOException(file + " is too short to be an archive");
+
+			ByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, XValArchiveWriter.HEADER);
+			ByteBuffer trailer = this.channel.map(FileChannel.MapMode.READ_ONLY, size - XValArchiveWriter.TRAILER, XValArchiveWriter.TRAILER);
+			if (header.getLong(0) != XValArchiveWriter.MAGIC || trailer.getLong(24) != XValArchiveWriter.MAGIC)
+				throw new IOException(file + " isn't a finished archive");
+			if (header.getInt(8) != XValArchiveWriter.VERSION)
+				throw new IOException(file + " is archive version " + header.getInt(8));
+
+			long indexOffset = trailer.getLong(0);
+			int blocks = trailer.getInt(8);
+			this.recordsPerBlock = trailer.getInt(12);
+			this.records = trailer.getLong(16);
+			if (blocks < 0 || indexOffset + (long) blocks * XValArchiveWriter.INDEX_ENTRY != size - XValArchiveWriter.TRAILER
+					|| this.recordsPerBlock < 1 || this.recordsPerBlock > Integer.MAX_VALUE / XValArchiveWriter.RECORD)
+				throw new IOException(file + " has a damaged index");
+
+			this.offsets = new long[blocks];
+			this.storedLengths = new int[blocks];
+			this.counts = new int[blocks];
+			this.firstRecords = new long[blocks];
+			ByteBuffer index = this.channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) blocks * XValArchiveWriter.INDEX_ENTRY);
+			for (int block = 0; block < blocks; block++) {
+				this.offsets[block] = index.getLong();
+				this.storedLengths[block] = index.getInt();
+				this.counts[block] = index.getInt();
+				this.firstRecords[block] = index.getLong();
+				// Cursors size their buffers by the block size, so an entry past it would overrun them
+				if (this.counts[block] < 0 || this.counts[block] > this.recordsPerBlock
+						|| this.storedLengths[block] < 0 || this.storedLengths[block] > this.recordsPerBlock * XValArchiveWriter.RECORD
+						|| this.offsets[block] < XValArchiveWriter.HEADER || this.offsets[block] + this.storedLengths[block] > indexOffset)
+					throw new IOException(file + " is corrupt: index entry " + block + " is out of range");
+			}
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return					Records in the archive
+	 */
+	public long getRecords() {
+		return this.records;
+	}
+
+	/**
+	 * @return					Compressed blocks in the archive
+	 */
+	public int getBlocks() {
+		return this.offsets.length;
+	}
+
+	/**
+	 * @return					A cursor before the first record
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Closes the file. Cursors may not be used afterwards.
+	 *
+	 * @throws IOException		If the file can't be closed
+	 */
+	public void close() throws IOException {
+		this.file.close();
+	}
+
+	/**
+	 * @return					Index of the block holding a record
+	 */
+	private int blockOf(long record) {
+		int low = 0, high = this.offsets.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (this.firstRecords[mid] <= record)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Steps through records, showing one at a time. The getters read the
+	 * current record from the block it's in; nothing is copied out.
+	 *
+	 * A cursor holds its own inflater and buffers and is not thread-safe.
+	 */
+	public final class Cursor {
+		private final Inflater inflater = new Inflater();
+		private final byte[] compressed = new byte[recordsPerBlock * XValArchiveWriter.RECORD];
+		/** One byte spare, so a block that inflates to more than it should is caught */
+		private final ByteBuffer inflated = ByteBuffer.wrap(new byte[recordsPerBlock * XValArchiveWriter.RECORD + 1]);
+
+		private ByteBuffer current;
+		private int block = -1;
+		private int count, serialsAt, valuesAt, masksAt;
+		private int i = -1;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return				false once past the last record
+		 * @throws IOException	If a block can't be read
+		 */
+		public boolean next() throws IOException {
+			if (++this.i < this.count)
+				return true;
+			if (this.block + 1 >= offsets.length) {
+				this.i = this.count;
+				return false;
+			}
+			load(this.block + 1);
+			this.i = 0;
+			return true;
+		}
+
+		/**
+		 * Moves to a record, so that {@link #next()} moves to the one after it.
+		 *
+		 * @param record		Record number, 0 through {@link XValArchiveReader#getRecords()} - 1
+		 * @throws IOException	If its block can't be read
+		 */
+		public void seek(long record) throws IOException {
+			if (record < 0 || record >= records)
+				throw new IndexOutOfBoundsException("No record " + record);
+			int block = blockOf(record);
+			if (block != this.block)
+				load(block);
+			this.i = (int) (record - firstRecords[block]);
+		}
+
+		/**
+		 * @return			Number of the current record
+		 */
+		public long getRecord() {
+			return firstRecords[this.block] + this.i;
+		}
+
+		/**
+		 * @return			Packed serial number
+		 */
+		public long getSerial() {
+			ByteBuffer b = this.current;
+			int at = this.serialsAt + this.i * 5;
+			return ((long) (b.get(at) & 0xFF) << 32) | ((long) b.getInt(at + 1) & 0xFFFFFFFFL);
+		}
+
+		/**
+		 * @return			Encrypted 'X' value
+		 */
+		public long getEncrypted() {
+			return this.current.getLong(this.valuesAt + this.i * 8);
+		}
+
+		/**
+		 * @return			Compact flag mask; see {@link SecdataFlags#compactMask(long)}
+		 */
+		public int getFlagMask() {
+			return this.current.getShort(this.masksAt + this.i * 2) & 0xFFFF;
+		}
+
+		/**
+		 * @return			true if the serial number and 'X' value belong together
+		 */
+		public boolean isValidPair() {
+			return SecdataFlags.isValidPair(getFlagMask());
+		}
+
+		/**
+		 * @return			true if the 'X' value is clean
+		 */
+		public boolean isClean() {
+			return getFlagMask() == 0;
+		}
+
+		/**
+		 * Describes the flags as {@link XVal#flags()} would, as far as the
+		 * compact mask allows: unknown flags are reported, but not which ones.
+		 *
+		 * @return			Flags of the current record
+		 */
+		public String getFlags() {
+			int mask = getFlagMask();
+			// Any one unknown flag stands for all of them
+			int low = (mask & SecdataFlags.KNOWN_FLAGS) | ((mask & SecdataFlags.COMPACT_UNKNOWN) != 0 ? SecdataFlags.KNOWN_FLAGS + 1 : 0);
+			int high = (mask & SecdataFlags.COMPACT_HIGH_WORD) != 0 ? 1 : 0;
+			return SecdataFlags.describe(low, high);
+		}
+
+		/**
+		 * Frees the cursor's inflater. The cursor may not be used afterwards.
+		 */
+		public void close() {
+			this.inflater.end();
+		}
+
+		/**
+		 * Makes a block current, mapping it and inflating it if it was deflated.
+		 */
+		private void load(int block) throws IOException {
+			int count = counts[block];
+			int length = count * XValArchiveWriter.RECORD;
+			int stored = storedLengths[block];
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offsets[block], stored);
+
+			if (stored == length) {
+				this.current = mapped;
+			} else {
+				mapped.get(this.compressed, 0, stored);
+				this.inflater.reset();
+				this.inflater.setInput(this.compressed, 0, stored);
+				try {
+					int n = 0;
+					while (!this.inflater.finished() && !this.inflater.needsInput() && n <= length)
+						n += this.inflater.inflate(this.inflated.array(), n, length + 1 - n);
+					if (n != length || !this.inflater.finished())
+						throw new IOException("Archive block " + block + " is damaged");
+				} catch (DataFormatException e) {
+					IOException damaged = new IOException("Archive block " + block + " is damaged");
+					damaged.initCause(e);
+					throw damaged;
+				}
+				this.current = this.inflated;
+			}
+
+			this.block = block;
+			this.count = count;
+			this.serialsAt = 0;
+			this.valuesAt = count * 5;
+			this.masksAt = count * (5 + 8);
+		}
+	}
+}
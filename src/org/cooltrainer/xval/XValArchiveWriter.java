@@ -0,0 +1,206 @@
+package org.cooltrainer.xval;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+
+/**
+ * The XValArchiveWriter class stores audit results in a compact binary
+ * archive, for reading back with {@link XValArchiveReader}.
+ *
+ * Each record is 15 bytes before compression: a serial number in 40 bits,
+ * the encrypted 'X' value in 64 and its compact flag mask (see
+ * {@link SecdataFlags#compactMask(long)}) in 16. Records are grouped into
+ * blocks, stored column by column so like bytes sit together, and each
+ * block is deflated on its own. A block that doesn't shrink is stored as
+ * is. An index of blocks at the end of the file lets a reader find any
+ * record without reading the blocks before it.
+ *
+ * <pre>
+ * Header, 16 bytes:       magic "XVALARC1", version, records per block
+ * Block:                  serials (5 bytes each), 'X' values (8), masks (2); deflated if smaller
+ * Index entry, 24 bytes:  offset, stored length, records, first record number
+ * Trailer, 32 bytes:      index offset, blocks, records per block, records, magic
+ * </pre>
+ *
+ * All numbers are big-endian. An instance is not thread-safe.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValArchiveWriter {
+	static final long MAGIC = 0x5856414C41524331L; // "XVALARC1"
+	static final int VERSION = 1;
+	static final int HEADER = 16;
+	static final int RECORD = 5 + 8 + 2;
+	static final int INDEX_ENTRY = 24;
+	static final int TRAILER = 32;
+
+	/** Records per block unless asked otherwise; about 1 MB before compression */
+	static final int DEFAULT_BLOCK = 65536;
+
+	private final FileOutputStream stream;
+	private final FileChannel channel;
+	private final Deflater deflater = new Deflater();
+	private final int recordsPerBlock;
+
+	private final long[] serials, encrypted;
+	private final int[] masks;
+	private int count;
+
+	private final byte[] raw, compressed;
+
+	/** Index entries written so far, flushed after the last block */
+	private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY);
+	private int blocks;
+	private long records;
+	private long position;
+
+	/**
+	 * Creates an archive, replacing any file already there.
+	 *
+	 * @param file				Archive file
+	 * @throws IOException		If the file can't be written
+	 */
+	public XValArchiveWriter(File file) throws IOException {
+		this(file, DEFAULT_BLOCK);
+	}
+
+	/**
+	 * Creates an archive, replacing any file already there.
+	 *
+	 * @param file				Archive file
+	 * @param recordsPerBlock	Records per compressed block
+	 * @throws IOException		If the file can't be written
+	 */
+	public XValArchiveWriter(File file, int recordsPerBlock) throws IOException {
+		if (recordsPerBlock < 1 || recordsPerBlock > Integer.MAX_VALUE / RECORD)
+			throw new IllegalArgumentException("Records per block out of range");
+		this.recordsPerBlock = recordsPerBlock;
+		this.serials = new long[recordsPerBlock];
+		this.encrypted = new long[recordsPerBlock];
+		this.masks = new int[recordsPerBlock];
+		this.raw = new byte[recordsPerBlock * RECORD];
+		this.compressed = new byte[this.raw.length];
+
+		this.stream = new FileOutputStream(file);
+		this.channel = this.stream.getChannel();
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putLong(MAGIC).putInt(VERSION).putInt(recordsPerBlock).flip();
+		write(header);
+	}
+
+	/**
+	 * Adds one audited pair.
+	 *
+	 * @param serial			Packed serial number
+	 * @param encrypted			Encrypted 'X' value
+	 * @param decrypted			Decrypted 'X' value, big-endian: high word, then low word
+	 * @throws IOException		If a finished block can't be written
+	 */
+	public void add(long serial, long encrypted, long decrypted) throws IOException {
+		int i = this.count++;
+		this.serials[i] = serial;
+		this.encrypted[i] = encrypted;
+		this.masks[i] = SecdataFlags.compactMask(decrypted);
+		if (this.count == this.recordsPerBlock)
+			flushBlock();
+	}
+
+	/**
+	 * Adds one audited pair.
+	 *
+	 * @param serial			Packed serial number
+	 * @param encrypted			Encrypted 'X' value
+	 * @param xval				The pair's decrypted 'X' value
+	 * @throws IOException		If a finished block can't be written
+	 */
+	public void add(long serial, long encrypted, XVal xval) throws IOException {
+		add(serial, encrypted, xval.getDecrypted());
+	}
+
+	/**
+	 * @return					Records added so far
+	 */
+	public long getRecords() {
+		return this.records + this.count;
+	}
+
+	/**
+	 * Writes the last block and the index, and closes the file.
+	 * The archive can't be read until this is done.
+	 *
+	 * @throws IOException		If the file can't be written
+	 */
+	public void close() throws IOException {
+		try {
+			flushBlock();
+			long indexOffset = this.position;
+			this.index.flip();
+			write(this.index);
+
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+			trailer.putLong(indexOffset).putInt(this.blocks).putInt(this.recordsPerBlock)
+					.putLong(this.records).putLong(MAGIC).flip();
+			write(trailer);
+		} finally {
+			this.deflater.end();
+			this.stream.close();
+		}
+	}
+
+	private void flushBlock() throws IOException {
+		int count = this.count;
+		if (count == 0)
+			return;
+
+		// Column by column: serials, 'X' values, masks
+		byte[] raw = this.raw;
+		int at = 0;
+		for (int i = 0; i < count; i++) {
+			long serial = this.serials[i];
+			for (int b = 4; b >= 0; b--)
+				raw[at++] = (byte) (serial >>> (b * 8));
+		}
+		for (int i = 0; i < count; i++) {
+			long value = this.encrypted[i];
+			for (int b = 7; b >= 0; b--)
+				raw[at++] = (byte) (value >>> (b * 8));
+		}
+		for (int i = 0; i < count; i++) {
+			raw[at++] = (byte) (this.masks[i] >>> 8);
+			raw[at++] = (byte) this.masks[i];
+		}
+
+		this.deflater.reset();
+		this.deflater.setInput(raw, 0, at);
+		this.deflater.finish();
+		int stored = 0;
+		while (!this.deflater.finished() && stored < at)
+			stored += this.deflater.deflate(this.compressed, stored, at - stored);
+		boolean deflated = this.deflater.finished() && stored < at;
+		if (!deflated)
+			stored = at;
+
+		if (this.index.remaining() < INDEX_ENTRY) {
+			ByteBuffer grown = ByteBuffer.allocate(this.index.capacity() * 2);
+			this.index.flip();
+			this.index = grown.put(this.index);
+		}
+		this.index.putLong(this.position).putInt(stored).putInt(count).putLong(this.records);
+
+		write(ByteBuffer.wrap(deflated ? this.compressed : raw, 0, stored));
+		this.blocks++;
+		this.records += count;
+		this.count = 0;
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		this.position += buffer.remaining();
+		while (buffer.hasRemaining())
+			this.channel.write(buffer);
+	}
+}
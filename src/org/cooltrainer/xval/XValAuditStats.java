@@ -0,0 +1,80 @@
+package org.cooltrainer.xval;
+
+/**
+ * Running totals for a bulk audit of serial number / 'X' value pairs.
+ *
+ * Instances are not thread-safe; each audit keeps its own and
+ * results from several can be combined with {@link #add(XValAuditStats)}.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValAuditStats {
+	long clean, flagged, invalid, malformed;
+
+	/**
+	 * Adds another audit's totals to these.
+	 *
+	 * @param other		Totals to add
+	 */
+	public void add(XValAuditStats other) {
+		this.clean += other.clean;
+		this.flagged += other.flagged;
+		this.invalid += other.invalid;
+		this.malformed += other.malformed;
+	}
+
+	/**
+	 * Counts one decrypted pair by its outcome.
+	 *
+	 * @param decrypted	Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	void count(long decrypted) {
+		if (XVal.isClean(decrypted))
+			this.clean++;
+		else if (XVal.isValidPair(decrypted))
+			this.flagged++;
+		else
+			this.invalid++;
+	}
+
+	/**
+	 * @return			Rows read, including malformed ones
+	 */
+	public long getRows() {
+		return this.clean + this.flagged + this.invalid + this.malformed;
+	}
+
+	/**
+	 * @return			Valid pairs with no secdata flags
+	 */
+	public long getClean() {
+		return this.clean;
+	}
+
+	/**
+	 * @return			Valid pairs with secdata flags
+	 */
+	public long getFlagged() {
+		return this.flagged;
+	}
+
+	/**
+	 * @return			Serial numbers and 'X' values that don't belong together
+	 */
+	public long getInvalid() {
+		return this.invalid;
+	}
+
+	/**
+	 * @return			Rows without a well-formed serial number and 'X' value
+	 */
+	public long getMalformed() {
+		return this.malformed;
+	}
+
+	public String toString() {
+		return getRows() + " rows: " + this.clean + " clean, " + this.flagged + " flagged, "
+				+ this.invalid + " invalid pairs, " + this.malformed + " malformed";
+	}
+}
@@ -0,0 +1,296 @@
+package org.cooltrainer.xval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The XValBatchDecryptor class decrypts many serial number / 'X' value pairs
+ * at once, spreading the work over a fixed pool of worker threads.
+ *
+ * Each worker reuses its own crypto instances (see {@link XVal#DecryptXVal(String, byte[])}),
+ * so the per-pair cost is the decryption itself rather than JCE provider lookup.
+ * Results are always returned in input order.
+ *
+ * An instance owns its worker threads. Call {@link #shutdown()} when finished with it.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValBatchDecryptor {
+	/**
+	 * Batches smaller than this are decrypted on the calling thread,
+	 * since handing them to the pool would cost more than it saves.
+	 */
+	private static final int MIN_PARALLEL = 512;
+
+	/**
+	 * Number of chunks per worker thread. A few chunks each keeps all
+	 * cores busy when some chunks finish sooner than others.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final int threads;
+	private final ExecutorService executor;
+	private volatile XValKeyCache keyCache;
+
+	/**
+	 * Creates a decryptor with one worker thread per available processor.
+	 */
+	public XValBatchDecryptor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads		Number of worker threads, at least one
+	 */
+	public XValBatchDecryptor(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("At least one worker thread is needed");
+		this.threads = threads;
+		this.executor = Executors.newFixedThreadPool(threads, new WorkerFactory());
+	}
+
+	/**
+	 * Decrypts a batch of serial number / 'X' value pairs.
+	 *
+	 * @param serials			Console serial numbers
+	 * @param xvals				Encrypted 'X' values, in the same order as serials
+	 * @return					Decrypted 'X' values, in input order
+	 * @throws XValException	On decryption error of any pair
+	 */
+	public XVal[] decryptAll(String[] serials, String[] xvals) throws XValException {
+		if (serials.length != xvals.length)
+			throw new IllegalArgumentException("Serial and XVal counts differ");
+
+		XValKeyCache keyCache = this.keyCache;
+		XVal[] results = new XVal[serials.length];
+		if (serials.length < MIN_PARALLEL || this.threads == 1) {
+			decryptRange(serials, xvals, results, 0, serials.length, keyCache);
+			return results;
+		}
+
+		int chunks = this.threads * CHUNKS_PER_THREAD;
+		int chunkSize = (serials.length + chunks - 1) / chunks;
+		List<Future<Object>> pending = new ArrayList<Future<Object>>(chunks);
+		for (int from = 0; from < serials.length; from += chunkSize) {
+			int to = Math.min(from + chunkSize, serials.length);
+			pending.add(this.executor.submit(new Chunk(serials, xvals, results, from, to, keyCache)));
+		}
+
+		await(pending);
+		return results;
+	}
+
+	/**
+	 * Decrypts a batch of serial number / 'X' value pairs.
+	 *
+	 * @param serials			Console serial numbers
+	 * @param xvals				Encrypted 'X' values, in the same order as serials
+	 * @return					Decrypted 'X' values, in input order
+	 * @throws XValException	On decryption error of any pair
+	 */
+	public List<XVal> decryptAll(List<String> serials, List<String> xvals) throws XValException {
+		XVal[] results = decryptAll(serials.toArray(new String[serials.size()]), xvals.toArray(new String[xvals.size()]));
+		List<XVal> list = new ArrayList<XVal>(results.length);
+		for (XVal result : results)
+			list.add(result);
+		return list;
+	}
+
+	/**
+	 * Decrypts a batch of serial number / 'X' value pairs with {@link XValKernel},
+	 * allocating nothing per pair. Each worker decrypts 64 pairs per pass with
+	 * bit-sliced DES.
+	 *
+	 * @param serials			Console serial numbers as numbers, 0 through 999999999999
+	 * @param encrypted			Encrypted 'X' values, in the same order as serials
+	 * @param decrypted			Receives decrypted 'X' values, in input order
+	 * @param count				Number of pairs to decrypt from the start of each array
+	 */
+	public void decryptAll(long[] serials, long[] encrypted, long[] decrypted, int count) {
+		XValKeyCache keyCache = this.keyCache;
+		if (count < MIN_PARALLEL || this.threads == 1) {
+			decryptRange(serials, encrypted, decrypted, 0, count, keyCache);
+			return;
+		}
+
+		// Keep chunks whole multiples of the bit-sliced lane count
+		int chunks = this.threads * CHUNKS_PER_THREAD;
+		int chunkSize = (count + chunks - 1) / chunks;
+		chunkSize = (chunkSize + BitslicedDes.LANES - 1) & -BitslicedDes.LANES;
+		List<Future<Object>> pending = new ArrayList<Future<Object>>(chunks);
+		for (int from = 0; from < count; from += chunkSize) {
+			int to = Math.min(from + chunkSize, count);
+			pending.add(this.executor.submit(new KernelChunk(serials, encrypted, decrypted, from, to, keyCache)));
+		}
+
+		try {
+			await(pending);
+		} catch (XValException e) {
+			// The kernel throws nothing checked, so this is a bug or an interrupt
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Decrypts a batch of serial number / 'X' value pairs into a columnar result batch.
+	 *
+	 * @param serials			Console serial numbers as numbers, 0 through 999999999999
+	 * @param encrypted			Encrypted 'X' values, in the same order as serials
+	 * @param count				Number of pairs to decrypt from the start of each array
+	 * @return					Serial numbers and decrypted 'X' values, in input order
+	 */
+	public XValResultBatch decryptAll(long[] serials, long[] encrypted, int count) {
+		long[] batchSerials = new long[count];
+		long[] decrypted = new long[count];
+		System.arraycopy(serials, 0, batchSerials, 0, count);
+		decryptAll(serials, encrypted, decrypted, count);
+		return new XValResultBatch(batchSerials, decrypted, count);
+	}
+
+	/**
+	 * Sets a cache of derived keys for this decryptor to use, or null for none.
+	 * Cached keys skip HMAC-SHA1 key derivation; pairs still go through
+	 * bit-sliced DES 64 at a time.
+	 *
+	 * @param keyCache			Shared key cache
+	 */
+	public void setKeyCache(XValKeyCache keyCache) {
+		this.keyCache = keyCache;
+	}
+
+	/**
+	 * @return					This decryptor's key cache, or null if it has none
+	 */
+	public XValKeyCache getKeyCache() {
+		return this.keyCache;
+	}
+
+	/**
+	 * @return					Number of worker threads
+	 */
+	int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * Runs other work on this decryptor's worker threads.
+	 *
+	 * @param task				Work to run
+	 * @return					The pending result
+	 */
+	<T> Future<T> submit(Callable<T> task) {
+		return this.executor.submit(task);
+	}
+
+	/**
+	 * Stops the worker threads. Batches already submitted are finished first.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Waits for every chunk of a batch, rethrowing the first failure.
+	 *
+	 * @param pending			Chunks of one batch
+	 * @throws XValException	If any chunk failed to decrypt
+	 */
+	static void await(List<? extends Future<?>> pending) throws XValException {
+		XValException failure = null;
+		for (Future<?> future : pending) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (failure == null)
+					failure = (e.getCause() instanceof XValException) ? (XValException) e.getCause() : new XValException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null)
+					failure = new XValException("Interrupted while waiting for batch decryption", e);
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	private static void decryptRange(String[] serials, String[] xvals, XVal[] results, int from, int to, XValKeyCache keyCache) throws XValException {
+		for (int i = from; i < to; i++) {
+			results[i] = new XVal(serials[i], xvals[i], keyCache);
+		}
+	}
+
+	private static void decryptRange(long[] serials, long[] encrypted, long[] decrypted, int from, int to, XValKeyCache keyCache) {
+		XValKernel.forCurrentThread().decrypt(serials, encrypted, decrypted, from, to, keyCache);
+	}
+
+	/**
+	 * One contiguous slice of a batch, decrypted on a worker thread.
+	 */
+	private static class Chunk implements Callable<Object> {
+		private final String[] serials, xvals;
+		private final XVal[] results;
+		private final int from, to;
+		private final XValKeyCache keyCache;
+
+		Chunk(String[] serials, String[] xvals, XVal[] results, int from, int to, XValKeyCache keyCache) {
+			this.serials = serials;
+			this.xvals = xvals;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.keyCache = keyCache;
+		}
+
+		public Object call() throws XValException {
+			decryptRange(this.serials, this.xvals, this.results, this.from, this.to, this.keyCache);
+			return null;
+		}
+	}
+
+	/**
+	 * One contiguous slice of a primitive batch, decrypted on a worker thread.
+	 */
+	private static class KernelChunk implements Callable<Object> {
+		private final long[] serials, encrypted, decrypted;
+		private final int from, to;
+		private final XValKeyCache keyCache;
+
+		KernelChunk(long[] serials, long[] encrypted, long[] decrypted, int from, int to, XValKeyCache keyCache) {
+			this.serials = serials;
+			this.encrypted = encrypted;
+			this.decrypted = decrypted;
+			this.from = from;
+			this.to = to;
+			this.keyCache = keyCache;
+		}
+
+		public Object call() {
+			decryptRange(this.serials, this.encrypted, this.decrypted, this.from, this.to, this.keyCache);
+			return null;
+		}
+	}
+
+	/**
+	 * Names worker threads and marks them as daemons so an idle
+	 * decryptor never keeps the process alive.
+	 */
+	private static class WorkerFactory implements ThreadFactory {
+		private static final AtomicInteger pool = new AtomicInteger();
+		private final int poolNumber = pool.incrementAndGet();
+		private final AtomicInteger thread = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "XValBatch-" + this.poolNumber + "-" + this.thread.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package org.cooltrainer.xval;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The XValCheckpoint class records how far a bulk audit has got, so an
+ * audit that was stopped can carry on where it left off. See
+ * {@link XValFileAudit#setCheckpoint(File, long)}.
+ *
+ * A checkpoint names the input range it belongs to and holds the offset of
+ * the next input row, the length of output written for the rows before it
+ * and the totals so far. It's written to a temporary file, synced to disk
+ * and renamed over the last one, so a checkpoint file always holds either
+ * the old checkpoint or the new one. A checkpoint that is damaged anyway
+ * is ignored, and its range is audited again from the start.
+ *
+ * <pre>
+ * 96 bytes:  magic "XVALCKP1", input size, input modification time,
+ *            range start, range end, next input offset, output length,
+ *            clean, flagged, invalid, malformed, CRC-32 of the rest
+ * </pre>
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class XValCheckpoint {
+	private static final String TAG = "XValCheckpoint";
+	private static final long MAGIC = 0x5856414C434B5031L; // "XVALCKP1"
+	private static final int SIZE = 96;
+
+	private final long inputSize, inputModified, start, end;
+	private long inputOffset, outputPosition;
+	private long clean, flagged, invalid, malformed;
+
+	/**
+	 * Starts a checkpoint for a range of an input, before any row is audited.
+	 */
+	XValCheckpoint(long inputSize, long inputModified, long start, long end) {
+		this.inputSize = inputSize;
+		this.inputModified = inputModified;
+		this.start = start;
+		this.end = end;
+		this.inputOffset = start;
+	}
+
+	/**
+	 * Reads a checkpoint.
+	 *
+	 * @param file				Checkpoint file
+	 * @return					The checkpoint, or null if there is no such file or it's damaged
+	 * @throws IOException		If the file can't be read
+	 */
+	public static XValCheckpoint read(File file) throws IOException {
+		FileInputStream in;
+		try {
+			in = new FileInputStream(file);
+		} catch (FileNotFoundException e) {
+			if (!file.exists())
+				return null;
+			throw e;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		try {
+			while (buffer.hasRemaining() && in.getChannel().read(buffer) >= 0)
+				;
+		} finally {
+			in.close();
+		}
+		if (buffer.hasRemaining() || buffer.getLong(0) != MAGIC || buffer.getLong(SIZE - 8) != checksum(buffer)) {
+			CoolLog.w(TAG, "%s is truncated or corrupt, starting its range again", file);
+			return null;
+		}
+
+		buffer.position(8);
+		XValCheckpoint checkpoint = new XValCheckpoint(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+		checkpoint.inputOffset = buffer.getLong();
+		checkpoint.outputPosition = buffer.getLong();
+		checkpoint.clean = buffer.getLong();
+		checkpoint.flagged = buffer.getLong();
+		checkpoint.invalid = buffer.getLong();
+		checkpoint.malformed = buffer.getLong();
+		return checkpoint;
+	}
+
+	/**
+	 * Replaces a checkpoint file with this checkpoint, once it's safely on disk.
+	 *
+	 * @param file				Checkpoint file
+	 * @throws IOException		If the file can't be written
+	 */
+	void write(File file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		buffer.putLong(MAGIC).putLong(this.inputSize).putLong(this.inputModified)
+				.putLong(this.start).putLong(this.end).putLong(this.inputOffset).putLong(this.outputPosition)
+				.putLong(this.clean).putLong(this.flagged).putLong(this.invalid).putLong(this.malformed);
+		buffer.putLong(checksum(buffer));
+		buffer.flip();
+
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			while (buffer.hasRemaining())
+				out.getChannel().write(buffer);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		// Replaces the old file in one step on POSIX; elsewhere it has to go first
+		if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file)))
+			throw new IOException("Can't replace " + file);
+		syncDirectory(file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Syncs a directory, so a rename in it survives a crash. Java can only
+	 * open a directory through java.nio.file, which older JVMs and Android
+	 * lack, so it's reached by reflection and skipped where it's missing or
+	 * the platform won't open directories.
+	 */
+	private static void syncDirectory(File directory) {
+		if (directory == null)
+			return;
+		FileChannel channel;
+		try {
+			Class<?> pathClass = Class.forName("java.nio.file.Path");
+			Class<?> optionClass = Class.forName("java.nio.file.OpenOption");
+			Object options = Array.newInstance(optionClass, 1);
+			Array.set(options, 0, Class.forName("java.nio.file.StandardOpenOption").getField("READ").get(null));
+			Method open = FileChannel.class.getMethod("open", pathClass, options.getClass());
+			Object path = File.class.getMethod("toPath").invoke(directory);
+			channel = (FileChannel) open.invoke(null, path, options);
+		} catch (Exception e) {
+			return;
+		}
+		try {
+			channel.force(true);
+		} catch (IOException e) {
+			CoolLog.w(TAG, "Can't sync " + directory, e);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Moves the checkpoint on.
+	 *
+	 * @param inputOffset		Offset of the next input row to audit
+	 * @param outputPosition	Output written, and synced, for the rows before it
+	 * @param stats				Totals for the rows before it
+	 */
+	void update(long inputOffset, long outputPosition, XValAuditStats stats) {
+		this.inputOffset = inputOffset;
+		this.outputPosition = outputPosition;
+		this.clean = stats.clean;
+		this.flagged = stats.flagged;
+		this.invalid = stats.invalid;
+		this.malformed = stats.malformed;
+	}
+
+	/**
+	 * @return					true if both checkpoints are for the same range of the same, unchanged, input
+	 */
+	boolean sameAudit(XValCheckpoint other) {
+		return this.inputSize == other.inputSize && this.inputModified == other.inputModified
+				&& this.start == other.start && this.end == other.end;
+	}
+
+	/**
+	 * @return					Offset of the next input row to audit
+	 */
+	public long getInputOffset() {
+		return this.inputOffset;
+	}
+
+	/**
+	 * @return					Length of the output for the rows before it
+	 */
+	public long getOutputPosition() {
+		return this.outputPosition;
+	}
+
+	/**
+	 * @return					true once every row in the range has been audited
+	 */
+	public boolean isDone() {
+		return this.inputOffset >= this.end;
+	}
+
+	/**
+	 * @return					Totals for the rows audited so far
+	 */
+	public XValAuditStats getStats() {
+		XValAuditStats stats = new XValAuditStats();
+		stats.clean = this.clean;
+		stats.flagged = this.flagged;
+		stats.invalid = this.invalid;
+		stats.malformed = this.malformed;
+		return stats;
+	}
+
+	public String toString() {
+		return "Checkpoint at input offset " + this.inputOffset + " of " + this.start + "-" + this.end
+				+ ", output length " + this.outputPosition + ": " + getStats();
+	}
+
+	private static long checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, SIZE - 8);
+		return crc.getValue();
+	}
+}
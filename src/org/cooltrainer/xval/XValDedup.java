@@ -0,0 +1,347 @@
+package org.cooltrainer.xval;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The XValDedup class spots serial number / 'X' value pairs that have
+ * already been checked, so a bulk audit can reuse their results instead
+ * of decrypting them again.
+ *
+ * Every pair first goes through a Bloom filter. A pair the filter has never
+ * seen is new for certain: it's decrypted, and all that's kept of it is its
+ * bits in the filter, a byte or two per pair. Only a pair the filter might
+ * have seen is looked up among the recorded pairs. If it's there, its
+ * result is reused; if not, it's a pair seen once before (or a false
+ * positive), and it's decrypted and recorded so later sightings can reuse
+ * it. A pair's first repeat is therefore decrypted again, and exact records
+ * are only kept for pairs that come back. Only an exact match is ever
+ * reused, so a false positive costs a record but never a wrong result.
+ *
+ * The filter is blocked: all of a pair's bits sit in one 64-byte block, so
+ * testing a pair touches one cache line. Recorded pairs are appended to a
+ * log of serial number, 'X' value and result, found through a table of
+ * entry numbers. All three live outside the Java heap. The filter is sized
+ * up front for a number of distinct pairs and gets less accurate past it;
+ * its false positive rate is estimated from how many of its bits are set.
+ * The log and table grow as needed.
+ *
+ * <pre>
+ * Log entry, 24 bytes:  serial       bit 63 set until the result is known
+ *                       encrypted    Encrypted 'X' value
+ *                       decrypted    Decrypted 'X' value, once known
+ * </pre>
+ *
+ * An instance is not thread-safe.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValDedup {
+	/** Returned by {@link #check(long, long)} for a pair to decrypt whose result isn't kept: first seen, or the log is full */
+	static final int UNRECORDED = Integer.MIN_VALUE;
+
+	/** Filter false positive rate the command-line tools ask for */
+	static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	private static final int ENTRY = 24;
+	private static final int MAX_ENTRIES = Integer.MAX_VALUE / ENTRY;
+	private static final long PENDING = 1L << 63;
+
+	/** Longs per filter block; one 64-byte cache line */
+	private static final int BLOCK_LONGS = 8;
+	private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+
+	private final ByteBuffer filter;
+	private final int blocks;
+	private final int hashes;
+	private long bitsSet;
+
+	private ByteBuffer log;
+	private int entries;
+
+	/** Entry number + 1 of the pair in each slot, or 0 if empty */
+	private IntBuffer table;
+	private int mask;
+
+	private long checked, repeats, unseen;
+
+	/** Tickets of a batch, and its pairs to decrypt gathered together; grown as needed */
+	private int[] tickets = new int[0], freshRows = new int[0];
+	private long[] freshSerials = new long[0], freshEncrypted = new long[0], freshDecrypted = new long[0];
+
+	/**
+	 * @param expectedPairs		Distinct pairs the filter is sized for
+	 * @param falsePositiveRate	Share of new pairs the filter may mistake for repeats, at expectedPairs
+	 */
+	public XValDedup(long expectedPairs, double falsePositiveRate) {
+		if (expectedPairs < 1)
+			throw new IllegalArgumentException("Expected pairs must be positive");
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+
+		double ln2 = Math.log(2);
+		double bits = -expectedPairs * Math.log(falsePositiveRate) / (ln2 * ln2);
+		long blocks = (long) Math.ceil(bits / BLOCK_BITS);
+		this.blocks = (int) Math.max(1, Math.min(blocks, Integer.MAX_VALUE / (BLOCK_LONGS * 8)));
+		this.hashes = (int) Math.max(1, Math.min(16, Math.round(bits / expectedPairs * ln2)));
+		this.filter = ByteBuffer.allocateDirect(this.blocks * BLOCK_LONGS * 8);
+
+		int capacity = 1 << 10;
+		this.log = ByteBuffer.allocateDirect(capacity * ENTRY);
+		this.table = ByteBuffer.allocateDirect(capacity * 2 * 4).asIntBuffer();
+		this.mask = capacity * 2 - 1;
+	}
+
+	/**
+	 * Decrypts a batch of pairs, reusing the results of recorded pairs and
+	 * decrypting the rest together on a decryptor's threads.
+	 *
+	 * @param decryptor			Decryptor for the pairs that aren't recorded
+	 * @param serials			Packed serial numbers
+	 * @param encrypted			Encrypted 'X' values
+	 * @param decrypted			Receives decrypted 'X' values
+	 * @param wellFormed		Which rows hold a pair; the others are skipped
+	 * @param count				Rows in the batch, starting at 0
+	 */
+	void decryptAll(XValBatchDecryptor decryptor, long[] serials, long[] encrypted, long[] decrypted, boolean[] wellFormed, int count) {
+		if (this.tickets.length < count) {
+			this.tickets = new int[count];
+			this.freshRows = new int[count];
+			this.freshSerials = new long[count];
+			this.freshEncrypted = new long[count];
+			this.freshDecrypted = new long[count];
+		}
+
+		int fresh = 0;
+		for (int i = 0; i < count; i++) {
+			if (!wellFormed[i])
+				continue;
+			int ticket = check(serials[i], encrypted[i]);
+			this.tickets[i] = ticket;
+			if (ticket < 0) {
+				this.freshRows[fresh] = i;
+				this.freshSerials[fresh] = serials[i];
+				this.freshEncrypted[fresh] = encrypted[i];
+				fresh++;
+			}
+		}
+		decryptor.decryptAll(this.freshSerials, this.freshEncrypted, this.freshDecrypted, fresh);
+
+		// New pairs first, since a repeat may be of a pair first recorded earlier in this batch
+		for (int j = 0; j < fresh; j++) {
+			int i = this.freshRows[j];
+			decrypted[i] = this.freshDecrypted[j];
+			complete(this.tickets[i], decrypted[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			if (wellFormed[i] && this.tickets[i] >= 0)
+				decrypted[i] = result(this.tickets[i]);
+		}
+	}
+
+	/**
+	 * Screens one pair. A pair that isn't recorded has to be decrypted, and
+	 * its result given to {@link #complete(int, long)}.
+	 *
+	 * @param serial			Packed serial number
+	 * @param encrypted			Encrypted 'X' value
+	 * @return					A recorded pair's entry number, for {@link #result(int)}; or a negative ticket for one to decrypt
+	 */
+	int check(long serial, long encrypted) {
+		this.checked++;
+		long hash = hash(serial, encrypted);
+
+		if (!testAndSet(hash)) {
+			this.unseen++;
+			return UNRECORDED;
+		}
+		int entry = find(hash, serial, encrypted);
+		if (entry >= 0) {
+			this.repeats++;
+			return entry;
+		}
+		return record(hash, serial, encrypted);
+	}
+
+	/**
+	 * Records the result of a pair {@link #check(long, long)} found to be new.
+	 *
+	 * @param ticket			What check returned for the pair
+	 * @param decrypted			Its decrypted 'X' value
+	 */
+	void complete(int ticket, long decrypted) {
+		if (ticket >= 0 || ticket == UNRECORDED)
+			return;
+		int at = ~ticket * ENTRY;
+		this.log.putLong(at, this.log.getLong(at) & ~PENDING);
+		this.log.putLong(at + 16, decrypted);
+	}
+
+	/**
+	 * @param entry				A repeat's entry number from {@link #check(long, long)}, completed since
+	 * @return					Its decrypted 'X' value
+	 */
+	long result(int entry) {
+		return this.log.getLong(entry * ENTRY + 16);
+	}
+
+	/**
+	 * @return					Pairs screened
+	 */
+	public long getChecked() {
+		return this.checked;
+	}
+
+	/**
+	 * @return					Pairs whose earlier result was reused instead of decrypting them again
+	 */
+	public long getRepeats() {
+		return this.repeats;
+	}
+
+	/**
+	 * @return					Pairs the filter had never seen, so decrypted without being recorded
+	 */
+	public long getUnseen() {
+		return this.unseen;
+	}
+
+	/**
+	 * @return					Pairs recorded exactly: those seen more than once, and the filter's false positives
+	 */
+	public int getRecorded() {
+		return this.entries;
+	}
+
+	/**
+	 * @return					Estimated share of new pairs the filter now mistakes for possible repeats
+	 */
+	public double getFalsePositiveRate() {
+		double full = (double) this.bitsSet / ((long) this.blocks * BLOCK_BITS);
+		return Math.pow(full, this.hashes);
+	}
+
+	/**
+	 * @return					Share of pairs that didn't need decrypting
+	 */
+	public double getSaved() {
+		return (this.checked == 0) ? 0 : (double) this.repeats / this.checked;
+	}
+
+	/**
+	 * @return					Bytes held outside the Java heap
+	 */
+	public long getMemory() {
+		return this.filter.capacity() + this.log.capacity() + (long) this.table.capacity() * 4;
+	}
+
+	public String toString() {
+		return this.checked + " pairs screened: " + this.repeats + " repeats reused ("
+				+ Math.round(getSaved() * 1000) / 10.0 + "% of decryption saved), " + this.unseen + " first seen, "
+				+ this.entries + " recorded, filter false positive rate about " + String.format("%.3f", getFalsePositiveRate() * 100)
+				+ "%, " + (getMemory() >> 10) + " KiB";
+	}
+
+	/**
+	 * Sets a pair's bits in the filter.
+	 *
+	 * @return					true if they were all set already
+	 */
+	private boolean testAndSet(long hash) {
+		// High half picks the block; low bits pick the first bit within it and the stride to the rest
+		int block = (int) (((hash >>> 32) * this.blocks) >>> 32) * BLOCK_LONGS * 8;
+		int bits = (int) hash;
+		int step = (int) (hash >>> 9) | 1;
+		boolean present = true;
+		for (int i = 0; i < this.hashes; i++) {
+			int bit = bits & (BLOCK_BITS - 1);
+			int at = block + (bit >>> 6) * 8;
+			long word = this.filter.getLong(at);
+			long flag = 1L << bit;
+			if ((word & flag) == 0) {
+				present = false;
+				this.filter.putLong(at, word | flag);
+				this.bitsSet++;
+			}
+			bits += step;
+		}
+		return present;
+	}
+
+	/**
+	 * @return					Entry number of a recorded pair, or -1 if it isn't recorded
+	 */
+	private int find(long hash, long serial, long encrypted) {
+		for (int slot = (int) hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			int entry = this.table.get(slot) - 1;
+			if (entry < 0)
+				return -1;
+			int at = entry * ENTRY;
+			if ((this.log.getLong(at) & ~PENDING) == serial && this.log.getLong(at + 8) == encrypted)
+				return entry;
+		}
+	}
+
+	/**
+	 * Appends a pair known not to be recorded.
+	 *
+	 * @return					Ticket for {@link #complete(int, long)}
+	 */
+	private int record(long hash, long serial, long encrypted) {
+		if (this.entries == MAX_ENTRIES)
+			return UNRECORDED;
+		if (this.entries * ENTRY == this.log.capacity())
+			growLog();
+		if (this.entries * 2 > this.mask)
+			growTable();
+
+		int entry = this.entries++;
+		int at = entry * ENTRY;
+		this.log.putLong(at, serial | PENDING);
+		this.log.putLong(at + 8, encrypted);
+		this.log.putLong(at + 16, 0);
+		insert(this.table, this.mask, hash, entry);
+		return ~entry;
+	}
+
+	private static void insert(IntBuffer table, int mask, long hash, int entry) {
+		int slot = (int) hash & mask;
+		while (table.get(slot) != 0)
+			slot = (slot + 1) & mask;
+		table.put(slot, entry + 1);
+	}
+
+	private void growLog() {
+		int capacity = (int) Math.min((long) this.log.capacity() * 2, (long) MAX_ENTRIES * ENTRY);
+		ByteBuffer log = ByteBuffer.allocateDirect(capacity);
+		this.log.clear();
+		log.put(this.log);
+		this.log = log;
+	}
+
+	private void growTable() {
+		int slots = (this.mask + 1) * 2;
+		IntBuffer table = ByteBuffer.allocateDirect(slots * 4).asIntBuffer();
+		int mask = slots - 1;
+		for (int entry = 0; entry < this.entries; entry++) {
+			int at = entry * ENTRY;
+			insert(table, mask, hash(this.log.getLong(at) & ~PENDING, this.log.getLong(at + 8)), entry);
+		}
+		this.table = table;
+		this.mask = mask;
+	}
+
+	/**
+	 * Mixes a pair into 64 well-spread bits (MurmurHash3's finalizer).
+	 */
+	private static long hash(long serial, long encrypted) {
+		long h = serial * 0x9E3779B97F4A7C15L ^ encrypted;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,391 @@
+package org.cooltrainer.xval;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The XValFileAudit class checks every serial number / 'X' value pair in a
+ * CSV or TSV file and writes one result row per input row.
+ *
+ * Input is memory-mapped a window at a time and parsed straight from the
+ * mapped bytes, so no String is made per row. Rows are decrypted in batches
+ * on an {@link XValBatchDecryptor} and results are written as each batch
+ * completes, so memory use doesn't grow with file size.
+ *
+ * <pre>
+ * Input rows:   serial,xval[,anything else]   (comma, tab, semicolon or space separated)
+ * Output rows:  serial,XVAL,result,flags
+ *               result is clean, flagged or invalid;
+ *               rows that can't be parsed are echoed followed by ",malformed"
+ * </pre>
+ *
+ * With an {@link XValDedup} set, pairs that keep coming back are screened
+ * out before decryption and get their earlier result instead.
+ *
+ * With a checkpoint file set, a file audit syncs its output and records its
+ * progress every so many rows, and an audit of the same range of the same
+ * input picks up from the last checkpoint instead of starting over. The
+ * output is cut back to the length recorded, so no row is lost or written
+ * twice. An index, archive or dedup set alongside isn't covered: rows from
+ * before the checkpoint aren't added to them again.
+ *
+ * An instance holds its batch buffers and is not thread-safe.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValFileAudit {
+	/** Bytes of input mapped at once */
+	static final int WINDOW = 64 << 20;
+
+	/** Rows decrypted per batch */
+	static final int BATCH = 16384;
+
+	/** Output is flushed when less than this much room is left */
+	private static final int OUT_SLACK = 1024;
+
+	/** Rows between checkpoints unless asked otherwise; a sync every few tens of megabytes of output */
+	static final long DEFAULT_CHECKPOINT_ROWS = 1 << 20;
+
+	private static final byte[] CLEAN = ascii("clean");
+	private static final byte[] FLAGGED = ascii("flagged");
+	private static final byte[] INVALID = ascii("invalid");
+	private static final byte[] MALFORMED = ascii(",malformed\n");
+
+	private final XValBatchDecryptor decryptor;
+	private XValIndex index;
+	private XValDedup dedup;
+	private XValArchiveWriter archive;
+
+	private final long[] serials = new long[BATCH];
+	private final long[] encrypted = new long[BATCH];
+	private final long[] decrypted = new long[BATCH];
+	private final boolean[] wellFormed = new boolean[BATCH];
+	private final int[] lineStart = new int[BATCH];
+	private final int[] lineEnd = new int[BATCH];
+	private final ByteBuffer out = ByteBuffer.allocate(1 << 20);
+	private int rows;
+
+	/** Output written so far; input offset of the current window, and end of its last batched row */
+	private long written, windowStart;
+	private int batchEnd;
+
+	private File checkpointFile;
+	private long checkpointRows;
+	/** Progress of the running audit, when it's being checkpointed */
+	private XValCheckpoint checkpoint;
+	private long sinceCheckpoint;
+
+
+	/**
+	 * @param decryptor		Decryptor to run batches on; not shut down by this class
+	 */
+	public XValFileAudit(XValBatchDecryptor decryptor) {
+		this.decryptor = decryptor;
+	}
+
+	/**
+	 * Records every well-formed row audited from now on in an index.
+	 *
+	 * @param index			Index to record results in, or null to stop recording
+	 */
+	public void setIndex(XValIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * Adds every well-formed row audited from now on to an archive.
+	 *
+	 * @param archive		Archive to add results to, or null to stop adding
+	 */
+	public void setArchive(XValArchiveWriter archive) {
+		this.archive = archive;
+	}
+
+	/**
+	 * Reuses the results of pairs seen before, from now on. A dedup may be
+	 * kept across audits to skip pairs seen in earlier files too.
+	 *
+	 * @param dedup			Record of pairs seen, or null to decrypt every pair
+	 */
+	public void setDedup(XValDedup dedup) {
+		this.dedup = dedup;
+	}
+
+	/**
+	 * Checkpoints file audits from now on, and resumes them from the checkpoint
+	 * file if it's for the same range of the same input. The checkpoint file is
+	 * left in place once an audit is done, so running it again returns at once
+	 * with the same totals; delete it to audit afresh.
+	 *
+	 * @param file			Checkpoint file, or null to stop checkpointing
+	 * @param rows			Rows between checkpoints
+	 */
+	public void setCheckpoint(File file, long rows) {
+		if (rows < 1)
+			throw new IllegalArgumentException("Rows between checkpoints must be positive");
+		this.checkpointFile = file;
+		this.checkpointRows = rows;
+	}
+
+	/**
+	 * Checkpoints file audits from now on, every {@value #DEFAULT_CHECKPOINT_ROWS} rows.
+	 *
+	 * @param file			Checkpoint file, or null to stop checkpointing
+	 * @see #setCheckpoint(File, long)
+	 */
+	public void setCheckpoint(File file) {
+		setCheckpoint(file, DEFAULT_CHECKPOINT_ROWS);
+	}
+
+	/**
+	 * Audits a whole file.
+	 *
+	 * @param input			File of serial number / 'X' value rows
+	 * @param output		File to write result rows to; replaced if it exists
+	 * @return				Totals for the file
+	 * @throws IOException	On read or write failure
+	 */
+	public XValAuditStats audit(File input, File output) throws IOException {
+		return audit(input, 0, input.length(), output);
+	}
+
+	/**
+	 * Audits the rows in a range of a file, resuming from the checkpoint if one is set.
+	 *
+	 * @param input			File of serial number / 'X' value rows
+	 * @param start			Offset of the first row, at the start of a line
+	 * @param end			Offset just past the last row, at the start of a line or end of file
+	 * @param output		File to write result rows to; replaced if it exists, unless resuming
+	 * @return				Totals for the range, including rows audited before resuming
+	 * @throws IOException	On read or write failure, or if the checkpoint can't be read or written
+	 */
+	public XValAuditStats audit(File input, long start, long end, File output) throws IOException {
+		FileInputStream in = new FileInputStream(input);
+		try {
+			FileChannel channel = in.getChannel();
+			XValCheckpoint progress = null, saved = null;
+			if (this.checkpointFile != null) {
+				progress = new XValCheckpoint(channel.size(), input.lastModified(), start, end);
+				saved = XValCheckpoint.read(this.checkpointFile);
+				// A checkpoint from another audit, or past what's left of the output, is no use
+				if (saved != null && (!saved.sameAudit(progress) || saved.getOutputPosition() > output.length()))
+					saved = null;
+			}
+
+			RandomAccessFile os = new RandomAccessFile(output, "rw");
+			try {
+				FileChannel out = os.getChannel();
+				XValAuditStats stats = (saved != null) ? saved.getStats() : new XValAuditStats();
+				long written = (saved != null) ? saved.getOutputPosition() : 0;
+				out.truncate(written);
+				out.position(written);
+
+				this.checkpoint = progress;
+				try {
+					return audit(channel, (saved != null) ? saved.getInputOffset() : start, end, out, stats, written);
+				} finally {
+					this.checkpoint = null;
+				}
+			} finally {
+				os.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Audits the rows in a range of a file.
+	 *
+	 * @param input			Channel of serial number / 'X' value rows
+	 * @param start			Offset of the first row, at the start of a line
+	 * @param end			Offset just past the last row, at the start of a line or end of file
+	 * @param output		Channel to write result rows to
+	 * @return				Totals for the range
+	 * @throws IOException	On read or write failure
+	 */
+	public XValAuditStats audit(FileChannel input, long start, long end, WritableByteChannel output) throws IOException {
+		return audit(input, start, end, output, new XValAuditStats(), 0);
+	}
+
+	/**
+	 * Audits the rows in a range of a file, adding to totals already counted.
+	 *
+	 * @param written		Output already written before this range
+	 */
+	private XValAuditStats audit(FileChannel input, long start, long end, WritableByteChannel output,
+			XValAuditStats stats, long written) throws IOException {
+		this.out.clear();
+		this.rows = 0;
+		this.written = written;
+		this.sinceCheckpoint = 0;
+
+		long position = start;
+		while (position < end) {
+			int size = (int) Math.min(WINDOW, end - position);
+			ByteBuffer window = input.map(FileChannel.MapMode.READ_ONLY, position, size);
+			this.windowStart = position;
+
+			// Stop each window at its last line break so no row straddles two windows
+			int limit = size;
+			if (position + size < end) {
+				while (limit > 0 && window.get(limit - 1) != '\n')
+					limit--;
+				if (limit == 0)
+					limit = size; // A single row longer than a window; it will come out malformed
+			}
+
+			parseWindow(window, limit, stats, output);
+			this.batchEnd = limit;
+			finishBatch(window, stats, output);
+			position += limit;
+		}
+
+		flush(output);
+		if (this.checkpoint != null)
+			checkpoint(stats, output, end);
+		return stats;
+	}
+
+	/**
+	 * Splits a window into rows, decrypting and writing out each batch as it fills.
+	 */
+	private void parseWindow(ByteBuffer window, int limit, XValAuditStats stats, WritableByteChannel output) throws IOException {
+		int start = 0;
+		while (start < limit) {
+			int end = start;
+			while (end < limit && window.get(end) != '\n')
+				end++;
+			int next = end + 1;
+			if (end > start && window.get(end - 1) == '\r')
+				end--;
+
+			if (!XValParser.isBlankRow(window, start, end)) {
+				int row = this.rows++;
+				this.lineStart[row] = start;
+				this.lineEnd[row] = end;
+				this.wellFormed[row] = XValParser.parseRow(window, start, end, this.serials, this.encrypted, row);
+				this.batchEnd = Math.min(next, limit);
+				if (this.rows == BATCH)
+					finishBatch(window, stats, output);
+			}
+			start = next;
+		}
+	}
+
+	/**
+	 * Decrypts the pending batch and writes its result rows in input order.
+	 */
+	private void finishBatch(ByteBuffer window, XValAuditStats stats, WritableByteChannel output) throws IOException {
+		int count = this.rows;
+		if (count == 0)
+			return;
+
+		XValDedup dedup = this.dedup;
+		if (dedup != null) {
+			dedup.decryptAll(this.decryptor, this.serials, this.encrypted, this.decrypted, this.wellFormed, count);
+		} else {
+			// Malformed rows are decrypted as zeroes to keep the batch contiguous, then ignored
+			for (int i = 0; i < count; i++) {
+				if (!this.wellFormed[i]) {
+					this.serials[i] = 0;
+					this.encrypted[i] = 0;
+				}
+			}
+			this.decryptor.decryptAll(this.serials, this.encrypted, this.decrypted, count);
+		}
+
+		XValIndex index = this.index;
+		XValArchiveWriter archive = this.archive;
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			if (this.out.remaining() < OUT_SLACK)
+				flush(output);
+
+			if (this.wellFormed[i]) {
+				long value = this.decrypted[i];
+				stats.count(value);
+				writeResult(this.serials[i], this.encrypted[i], value);
+				if (index != null)
+					index.put(this.serials[i], this.encrypted[i], value, timestamp);
+				if (archive != null)
+					archive.add(this.serials[i], this.encrypted[i], value);
+			} else {
+				stats.malformed++;
+				writeMalformed(window, this.lineStart[i], this.lineEnd[i], output);
+			}
+		}
+		this.rows = 0;
+
+		if (this.checkpoint != null && (this.sinceCheckpoint += count) >= this.checkpointRows)
+			checkpoint(stats, output, this.windowStart + this.batchEnd);
+	}
+
+	/**
+	 * Syncs the output written so far and records that every row before an input offset is done.
+	 */
+	private void checkpoint(XValAuditStats stats, WritableByteChannel output, long inputOffset) throws IOException {
+		flush(output);
+		if (output instanceof FileChannel)
+			((FileChannel) output).force(false);
+		this.checkpoint.update(inputOffset, this.written, stats);
+		this.checkpoint.write(this.checkpointFile);
+		this.sinceCheckpoint = 0;
+	}
+
+	private void writeResult(long serial, long xval, long value) {
+		ByteBuffer out = this.out;
+
+		int at = out.position();
+		for (int i = 11; i >= 0; i--) {
+			out.put(at + i, (byte) ('0' + (int) (serial % 10)));
+			serial /= 10;
+		}
+		out.position(at + 12);
+		out.put((byte) ',');
+
+		HexCodec.encode(xval, out, out.position(), true);
+		out.position(out.position() + 16);
+		out.put((byte) ',');
+
+		out.put(XVal.isClean(value) ? CLEAN : XVal.isValidPair(value) ? FLAGGED : INVALID);
+		out.put((byte) ',');
+
+		String flags = SecdataFlags.describe(value);
+		for (int i = 0; i < flags.length(); i++)
+			out.put((byte) flags.charAt(i));
+		out.put((byte) '\n');
+	}
+
+	private void writeMalformed(ByteBuffer window, int start, int end, WritableByteChannel output) throws IOException {
+		for (int i = start; i < end; i++) {
+			if (!this.out.hasRemaining())
+				flush(output);
+			this.out.put(window.get(i));
+		}
+		if (this.out.remaining() < MALFORMED.length)
+			flush(output);
+		this.out.put(MALFORMED);
+	}
+
+	private void flush(WritableByteChannel output) throws IOException {
+		this.out.flip();
+		this.written += this.out.remaining();
+		while (this.out.hasRemaining())
+			output.write(this.out);
+		this.out.clear();
+	}
+
+	private static byte[] ascii(String s) {
+		byte[] bytes = new byte[s.length()];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) s.charAt(i);
+		return bytes;
+	}
+}
@@ -0,0 +1,223 @@
+package org.cooltrainer.xval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * The XValFleetAnalytics class counts audit outcomes and secdata.bin flags
+ * across many consoles, grouped by what each serial number says about where
+ * and when it was built: factory, production year, week and line
+ * (see {@link Xbox360}).
+ *
+ * Batches are counted in parallel on an {@link XValBatchDecryptor}'s worker
+ * threads. Every slice of a batch borrows a set of primitive counters that
+ * no other slice is using and hands it back when done, so no locks or
+ * atomics are touched per console. Counter sets belong to this object, not
+ * to the threads, so nothing is left behind on a shared pool once it's
+ * dropped. The sets are only summed when {@link #report()} is called, which
+ * can be done between batches as often as needed while more keep arriving.
+ *
+ * {@link #add(XValResultBatch)} may be called from several threads at once.
+ * {@link #report()} and {@link #clear()} include every batch whose add has
+ * returned on the calling thread, and must not overlap an add in progress.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValFleetAnalytics {
+	/** Counter slots per group: outcomes, then one per known flag, then unknown flags */
+	static final int COUNTERS = 16;
+	static final int CLEAN = 0;
+	static final int FLAGGED = 1;
+	static final int INVALID = 2;
+	static final int FIRST_FLAG = 3;
+	static final int UNKNOWN = FIRST_FLAG + 12;
+
+	/**
+	 * Groups are stored as blocks, one per factory code and year digit,
+	 * each holding a counter set per week and line. A fleet only touches a
+	 * handful of factory/year blocks, so only those are allocated.
+	 */
+	static final int BLOCKS = 100 * 10;
+	static final int CELLS = 100 * 10;
+
+	/** Batches smaller than this are counted on the calling thread */
+	private static final int MIN_PARALLEL = 4096;
+
+	private final XValBatchDecryptor pool;
+	/** Every counter set made so far; also the lock for idle */
+	private final List<Tally> tallies = new ArrayList<Tally>();
+	/** Counter sets not being counted into right now */
+	private final List<Tally> idle = new ArrayList<Tally>();
+
+	/**
+	 * @param pool				Decryptor whose worker threads count large batches; not shut down by this class
+	 */
+	public XValFleetAnalytics(XValBatchDecryptor pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Counts a batch of decrypted results.
+	 *
+	 * @param batch				Serial numbers and decrypted 'X' values
+	 */
+	public void add(XValResultBatch batch) {
+		add(batch.serials, batch.decrypted, batch.size);
+	}
+
+	/**
+	 * Counts a batch of decrypted results.
+	 *
+	 * @param serials			Console serial numbers as numbers, 0 through 999999999999
+	 * @param decrypted			Decrypted 'X' values, in the same order as serials
+	 * @param count				Number of results to count from the start of each array
+	 */
+	public void add(long[] serials, long[] decrypted, int count) {
+		int threads = this.pool.getThreads();
+		if (count < MIN_PARALLEL || threads == 1) {
+			count(serials, decrypted, 0, count);
+			return;
+		}
+
+		int chunkSize = (count + threads - 1) / threads;
+		List<Future<Object>> pending = new ArrayList<Future<Object>>(threads);
+		for (int from = 0; from < count; from += chunkSize)
+			pending.add(this.pool.submit(new Chunk(serials, decrypted, from, Math.min(from + chunkSize, count))));
+
+		try {
+			XValBatchDecryptor.await(pending);
+		} catch (XValException e) {
+			// Counting throws nothing checked, so this is a bug or an interrupt
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Counts part of a batch into a counter set no one else is using.
+	 */
+	private void count(long[] serials, long[] decrypted, int from, int to) {
+		Tally tally;
+		synchronized (this.tallies) {
+			int last = this.idle.size() - 1;
+			if (last >= 0) {
+				tally = this.idle.remove(last);
+			} else {
+				tally = new Tally();
+				this.tallies.add(tally);
+			}
+		}
+		try {
+			tally.count(serials, decrypted, from, to);
+		} finally {
+			synchronized (this.tallies) {
+				this.idle.add(tally);
+			}
+		}
+	}
+
+	/**
+	 * Sums every counter set.
+	 *
+	 * @return					Counts for everything added so far
+	 */
+	public XValFleetReport report() {
+		long[][] merged = new long[BLOCKS][];
+		synchronized (this.tallies) {
+			for (Tally tally : this.tallies) {
+				for (int block = 0; block < BLOCKS; block++) {
+					long[] counts = tally.blocks[block];
+					if (counts == null)
+						continue;
+					long[] into = merged[block];
+					if (into == null)
+						into = merged[block] = new long[CELLS * COUNTERS];
+					for (int i = 0; i < into.length; i++)
+						into[i] += counts[i];
+				}
+			}
+		}
+		return new XValFleetReport(merged);
+	}
+
+	/**
+	 * Forgets everything added so far.
+	 */
+	public void clear() {
+		synchronized (this.tallies) {
+			for (Tally tally : this.tallies)
+				tally.blocks = new long[BLOCKS][];
+		}
+	}
+
+	/**
+	 * @param serial			Console serial number as a number
+	 * @return					Index of the serial number's factory and year digit block
+	 */
+	static int block(long serial) {
+		return (int) (serial % 100) * 10 + (int) (serial / 10000 % 10);
+	}
+
+	/**
+	 * @param serial			Console serial number as a number
+	 * @return					Index of the serial number's week and line within its block
+	 */
+	static int cell(long serial) {
+		return (int) (serial / 100 % 100) * 10 + (int) (serial / 100000000000L);
+	}
+
+	/**
+	 * One set of counters, counted into by one slice at a time.
+	 */
+	private static class Tally {
+		long[][] blocks = new long[BLOCKS][];
+
+		void count(long[] serials, long[] decrypted, int from, int to) {
+			long[][] blocks = this.blocks;
+			for (int i = from; i < to; i++) {
+				long serial = serials[i];
+				int block = block(serial);
+				long[] counts = blocks[block];
+				if (counts == null)
+					counts = blocks[block] = new long[CELLS * COUNTERS];
+				int at = cell(serial) * COUNTERS;
+
+				long value = decrypted[i];
+				if (XVal.isClean(value)) {
+					counts[at + CLEAN]++;
+				} else if (XVal.isValidPair(value)) {
+					counts[at + FLAGGED]++;
+					int low = (int) value;
+					for (int flags = low & SecdataFlags.KNOWN_FLAGS; flags != 0; flags &= flags - 1)
+						counts[at + FIRST_FLAG + Integer.numberOfTrailingZeros(flags)]++;
+					if ((low & SecdataFlags.UNKNOWN_FLAGS) != 0)
+						counts[at + UNKNOWN]++;
+				} else {
+					counts[at + INVALID]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * One slice of a batch, counted on a worker thread.
+	 */
+	private class Chunk implements Callable<Object> {
+		private final long[] serials, decrypted;
+		private final int from, to;
+
+		Chunk(long[] serials, long[] decrypted, int from, int to) {
+			this.serials = serials;
+			this.decrypted = decrypted;
+			this.from = from;
+			this.to = to;
+		}
+
+		public Object call() {
+			count(this.serials, this.decrypted, this.from, this.to);
+			return null;
+		}
+	}
+}
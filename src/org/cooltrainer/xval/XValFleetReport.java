@@ -0,0 +1,209 @@
+package org.cooltrainer.xval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Audit outcome and secdata.bin flag counts for a fleet of consoles, as
+ * summed by {@link XValFleetAnalytics#report()}.
+ *
+ * Counts can be read at any grouping: pass {@link #getGroups(int)} any
+ * combination of {@link #FACTORY}, {@link #YEAR}, {@link #WEEK} and
+ * {@link #LINE}, or 0 for fleet-wide totals.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValFleetReport {
+	public static final int FACTORY = 0x1;
+	public static final int YEAR = 0x2;
+	public static final int WEEK = 0x4;
+	public static final int LINE = 0x8;
+
+	private static final int COUNTERS = XValFleetAnalytics.COUNTERS;
+
+	/** Merged counters, laid out as in {@link XValFleetAnalytics} */
+	private final long[][] blocks;
+
+	XValFleetReport(long[][] blocks) {
+		this.blocks = blocks;
+	}
+
+	/**
+	 * @return					Totals for the whole fleet
+	 */
+	public Group getTotal() {
+		List<Group> groups = getGroups(0);
+		return groups.isEmpty() ? new Group(0, -1, -1, -1, -1, new long[COUNTERS]) : groups.get(0);
+	}
+
+	/**
+	 * Sums counts into groups.
+	 *
+	 * @param by				Fields to group by, any of {@link #FACTORY}, {@link #YEAR}, {@link #WEEK} and {@link #LINE}
+	 * @return					Groups with at least one console, ordered by factory, year, week and line
+	 */
+	public List<Group> getGroups(int by) {
+		Map<Integer, long[]> sums = new TreeMap<Integer, long[]>();
+		for (int block = 0; block < XValFleetAnalytics.BLOCKS; block++) {
+			long[] counts = this.blocks[block];
+			if (counts == null)
+				continue;
+			int factory = block / 10;
+			int yearDigit = block % 10;
+
+			for (int cell = 0; cell < XValFleetAnalytics.CELLS; cell++) {
+				int at = cell * COUNTERS;
+				if (counts[at + XValFleetAnalytics.CLEAN] == 0 && counts[at + XValFleetAnalytics.FLAGGED] == 0
+						&& counts[at + XValFleetAnalytics.INVALID] == 0)
+					continue;
+
+				// Sort key: factory, then year with 5 through 9 before 0 through 4, then week, then line
+				int key = (by & FACTORY) != 0 ? factory : 0;
+				key = key * 10 + ((by & YEAR) != 0 ? (yearDigit + 5) % 10 : 0);
+				key = key * 100 + ((by & WEEK) != 0 ? cell / 10 : 0);
+				key = key * 10 + ((by & LINE) != 0 ? cell % 10 : 0);
+
+				long[] sum = sums.get(key);
+				if (sum == null) {
+					sum = new long[COUNTERS];
+					sums.put(key, sum);
+				}
+				for (int i = 0; i < COUNTERS; i++)
+					sum[i] += counts[at + i];
+			}
+		}
+
+		List<Group> groups = new ArrayList<Group>(sums.size());
+		for (Map.Entry<Integer, long[]> entry : sums.entrySet()) {
+			int key = entry.getKey();
+			int line = key % 10;
+			int week = key / 10 % 100;
+			int year = (key / 1000 % 10 + 5) % 10;
+			int factory = key / 10000;
+			groups.add(new Group(by,
+					(by & FACTORY) != 0 ? factory : -1,
+					(by & YEAR) != 0 ? year + ((year < 5) ? 2010 : 2000) : -1,
+					(by & WEEK) != 0 ? week : -1,
+					(by & LINE) != 0 ? line : -1,
+					entry.getValue()));
+		}
+		return groups;
+	}
+
+	public String toString() {
+		return getTotal().toString();
+	}
+
+	/**
+	 * Counts for one group of consoles. Fields the group wasn't grouped by are -1.
+	 */
+	public static final class Group {
+		private final int by, factory, year, week, line;
+		private final long[] counts;
+
+		Group(int by, int factory, int year, int week, int line, long[] counts) {
+			this.by = by;
+			this.factory = factory;
+			this.year = year;
+			this.week = week;
+			this.line = line;
+			this.counts = counts;
+		}
+
+		/**
+		 * @return			Factory code, or -1
+		 */
+		public int getFactory() {
+			return this.factory;
+		}
+
+		/**
+		 * @return			Production year, or -1
+		 */
+		public int getYear() {
+			return this.year;
+		}
+
+		/**
+		 * @return			Production week, or -1
+		 */
+		public int getWeek() {
+			return this.week;
+		}
+
+		/**
+		 * @return			Production line, or -1
+		 */
+		public int getLine() {
+			return this.line;
+		}
+
+		/**
+		 * @return			Consoles counted
+		 */
+		public long getRows() {
+			return getClean() + getFlagged() + getInvalid();
+		}
+
+		/**
+		 * @return			Valid pairs with no secdata flags
+		 */
+		public long getClean() {
+			return this.counts[XValFleetAnalytics.CLEAN];
+		}
+
+		/**
+		 * @return			Valid pairs with secdata flags
+		 */
+		public long getFlagged() {
+			return this.counts[XValFleetAnalytics.FLAGGED];
+		}
+
+		/**
+		 * @return			Serial numbers and 'X' values that don't belong together
+		 */
+		public long getInvalid() {
+			return this.counts[XValFleetAnalytics.INVALID];
+		}
+
+		/**
+		 * @param flag		One {@link SecdataFlags} constant, or {@link SecdataFlags#UNKNOWN_FLAGS}
+		 * @return			Valid pairs with that flag
+		 */
+		public long getCount(int flag) {
+			if (flag == SecdataFlags.UNKNOWN_FLAGS)
+				return this.counts[XValFleetAnalytics.UNKNOWN];
+			if (Integer.bitCount(flag) != 1 || (flag & SecdataFlags.KNOWN_FLAGS) == 0)
+				throw new IllegalArgumentException("Not a single secdata flag: " + Integer.toHexString(flag));
+			return this.counts[XValFleetAnalytics.FIRST_FLAG + Integer.numberOfTrailingZeros(flag)];
+		}
+
+		/**
+		 * @param flag		One {@link SecdataFlags} constant, or {@link SecdataFlags#UNKNOWN_FLAGS}
+		 * @return			Fraction of consoles counted with that flag
+		 */
+		public double getRate(int flag) {
+			long rows = getRows();
+			return rows == 0 ? 0 : (double) getCount(flag) / rows;
+		}
+
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			if ((this.by & FACTORY) != 0)
+				s.append("factory ").append(this.factory).append(", ");
+			if ((this.by & YEAR) != 0)
+				s.append("year ").append(this.year).append(", ");
+			if ((this.by & WEEK) != 0)
+				s.append("week ").append(this.week).append(", ");
+			if ((this.by & LINE) != 0)
+				s.append("line ").append(this.line).append(", ");
+			s.append(getRows()).append(" consoles: ").append(getClean()).append(" clean, ")
+					.append(getFlagged()).append(" flagged (").append(getCount(SecdataFlags.CONSOLE_BANNED))
+					.append(" banned), ").append(getInvalid()).append(" invalid pairs");
+			return s.toString();
+		}
+	}
+}
@@ -0,0 +1,618 @@
+package org.cooltrainer.xval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The XValIndex class keeps every audit of every console ever checked in
+ * memory-mapped files, keyed by serial number.
+ *
+ * Audits are only ever appended to a log; nothing is overwritten or
+ * removed. Each record points back to the console's previous record, so a
+ * console's whole history can be read newest first. An open-addressing
+ * hash table in a second file, named after the log with ".table" added,
+ * maps each serial number to its latest record. Opening an index maps the
+ * files rather than loading them, and a lookup touches a page of the table
+ * and a page of the log. When the table gets too full it's rebuilt at twice
+ * the size into a new file, which is then renamed over the old one.
+ *
+ * Both files are mapped in segments, so neither is limited to what one
+ * mapping can hold. The log is the index; the table can always be rebuilt
+ * from it. New records are committed to disk every
+ * {@value #COMMIT_INTERVAL} audits, then the log's record count. The
+ * table, whose changes are scattered across the file, is only committed
+ * by {@link #force()} and {@link #close()}. If the table is missing, or
+ * was changed after its last commit when the process stopped, it's
+ * rebuilt from the log when the index is opened. Audits made after the
+ * last commit may be lost in a crash, but never what was committed.
+ *
+ * <pre>
+ * Log header, 64 bytes:    magic "XVALIDX2", version, committed records
+ * Record, 40 bytes:        key          bits 40-55 compact flag mask (see {@link SecdataFlags#compactMask(long)}),
+ *                                       bits 0-39 serial number
+ *                          encrypted    Encrypted 'X' value
+ *                          decrypted    Decrypted 'X' value
+ *                          timestamp    Audit time, milliseconds since the epoch
+ *                          previous     This console's previous record number, or -1
+ * Table header, 64 bytes:  magic "XVALTBL2", version, capacity (slots), consoles,
+ *                          records covered, changed-since-commit flag
+ * Slot, 16 bytes:          key          bit 63 set when occupied, bits 0-39 serial number
+ *                          record       Number of the console's latest record
+ * </pre>
+ *
+ * All methods are synchronized, so one index can be shared between threads.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValIndex {
+	private static final long LOG_MAGIC = 0x5856414C49445832L; // "XVALIDX2"
+	private static final long TABLE_MAGIC = 0x5856414C54424C32L; // "XVALTBL2"
+	private static final int VERSION = 2;
+	private static final int HEADER = 64;
+	private static final int RECORD = 40;
+	private static final int SLOT = 16;
+
+	private static final int RECORDS_OFFSET = 16;
+	private static final int CAPACITY_OFFSET = 16;
+	private static final int COUNT_OFFSET = 24;
+	private static final int COVERED_OFFSET = 32;
+	private static final int DIRTY_OFFSET = 40;
+
+	/** Records per log segment, about 40 MB */
+	private static final int RECORD_SHIFT = 20;
+	/** Slots per table segment, 64 MB */
+	private static final int SLOT_SHIFT = 22;
+
+	private static final long OCCUPIED = 1L << 63;
+	private static final long SERIAL_MASK = (1L << 40) - 1;
+	private static final long NONE = -1;
+
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** Audits between log commits */
+	static final int COMMIT_INTERVAL = 1 << 16;
+
+	private final File file, tableFile;
+
+	private RandomAccessFile log;
+	private MappedByteBuffer logHeader;
+	private MappedByteBuffer[] logSegments = new MappedByteBuffer[16];
+	/** Records appended, and records committed to disk */
+	private long records, committed;
+
+	private RandomAccessFile table;
+	private MappedByteBuffer tableHeader;
+	private MappedByteBuffer[] tableSegments;
+	private long capacity, count;
+	private int capacityBits;
+	/** Whether the table has changed since it was last committed */
+	private boolean dirty;
+
+	private XValIndex(File file) {
+		this.file = file;
+		this.tableFile = new File(file.getPath() + ".table");
+	}
+
+	/**
+	 * Opens an index, creating it if it doesn't exist.
+	 *
+	 * @param file			Index log file
+	 * @return				The open index
+	 * @throws IOException	If the files can't be mapped or aren't an index
+	 */
+	public static XValIndex open(File file) throws IOException {
+		return open(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Opens an index, creating it if it doesn't exist.
+	 *
+	 * @param file			Index log file
+	 * @param capacity		Number of table slots for a new index, rounded up to a power of two
+	 * @return				The open index
+	 * @throws IOException	If the files can't be mapped or aren't an index
+	 */
+	public static XValIndex open(File file, int capacity) throws IOException {
+		XValIndex index = new XValIndex(file);
+		if (!file.exists() || file.length() == 0)
+			createLog(file);
+		index.openLog();
+		try {
+			if (!index.openTable())
+				index.rebuild(capacity);
+		} catch (IOException e) {
+			index.log.close();
+			if (index.table != null)
+				index.table.close();
+			throw e;
+		}
+		return index;
+	}
+
+	/**
+	 * Records an audit. Earlier audits of the same console are kept, and
+	 * can be read with {@link #history(long)}.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @param encrypted		Encrypted 'X' value
+	 * @param decrypted		Decrypted 'X' value
+	 * @param timestamp		Audit time, milliseconds since the epoch
+	 * @throws IOException	If the table can't grow
+	 */
+	public synchronized void put(long serial, long encrypted, long decrypted, long timestamp) throws IOException {
+		checkOpen();
+		if (!this.dirty)
+			markDirty();
+
+		long slot = find(serial);
+		long previous = occupied(slot) ? slotRecord(slot) : NONE;
+		long record = this.records++;
+		int at = recordOffset(record);
+		MappedByteBuffer segment = logSegment(record);
+		segment.putLong(at, ((long) SecdataFlags.compactMask(decrypted) << 40) | serial);
+		segment.putLong(at + 8, encrypted);
+		segment.putLong(at + 16, decrypted);
+		segment.putLong(at + 24, timestamp);
+		segment.putLong(at + 32, previous);
+		link(serial, slot, record);
+
+		if (this.records - this.committed >= COMMIT_INTERVAL)
+			commitLog();
+	}
+
+	/**
+	 * Records an audit; see {@link #put(long, long, long, long)}.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @param encrypted		Encrypted 'X' value
+	 * @param xval			The decrypted 'X' value
+	 * @param timestamp		Audit time, milliseconds since the epoch
+	 * @throws IOException	If the table can't grow
+	 */
+	public void put(long serial, long encrypted, XVal xval, long timestamp) throws IOException {
+		put(serial, encrypted, xval.getDecrypted(), timestamp);
+	}
+
+	/**
+	 * Looks up the latest audit of a console.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @return				The audit, or null if this console hasn't been seen
+	 */
+	public synchronized Entry get(long serial) {
+		checkOpen();
+		long slot = find(serial);
+		return occupied(slot) ? entry(slotRecord(slot)) : null;
+	}
+
+	/**
+	 * Looks up every audit of a console.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @return				The audits, newest first; empty if this console hasn't been seen
+	 */
+	public synchronized List<Entry> history(long serial) {
+		checkOpen();
+		List<Entry> history = new ArrayList<Entry>();
+		long slot = find(serial);
+		if (!occupied(slot))
+			return history;
+		for (long record = slotRecord(slot); record != NONE; ) {
+			history.add(entry(record));
+			record = logSegment(record).getLong(recordOffset(record) + 32);
+		}
+		return history;
+	}
+
+	/**
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @return				true if this console has been seen
+	 */
+	public synchronized boolean contains(long serial) {
+		checkOpen();
+		return occupied(find(serial));
+	}
+
+	/**
+	 * @return				Number of consoles in the index
+	 */
+	public synchronized long size() {
+		return this.count;
+	}
+
+	/**
+	 * @return				Number of audits in the index
+	 */
+	public synchronized long getRecords() {
+		return this.records;
+	}
+
+	/**
+	 * Commits every audit recorded so far to disk, along with the table.
+	 */
+	public synchronized void force() {
+		checkOpen();
+		commit();
+	}
+
+	/**
+	 * Commits every audit recorded so far to disk and closes the index.
+	 *
+	 * @throws IOException	If the index can't be committed or closed
+	 */
+	public synchronized void close() throws IOException {
+		if (this.log == null)
+			return;
+		try {
+			commit();
+		} finally {
+			this.logHeader = null;
+			this.logSegments = null;
+			this.tableHeader = null;
+			this.tableSegments = null;
+			try {
+				this.log.close();
+			} finally {
+				this.table.close();
+				this.log = null;
+				this.table = null;
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (this.log == null)
+			throw new IllegalStateException("Index is closed");
+	}
+
+	/**
+	 * Makes the log's new records durable, then the table that points at them.
+	 */
+	private void commit() {
+		commitLog();
+		if (this.dirty) {
+			for (MappedByteBuffer segment : this.tableSegments)
+				segment.force();
+			this.tableHeader.putLong(COUNT_OFFSET, this.count);
+			this.tableHeader.putLong(COVERED_OFFSET, this.committed);
+			this.tableHeader.putInt(DIRTY_OFFSET, 0);
+			this.tableHeader.force();
+			this.dirty = false;
+		}
+	}
+
+	/**
+	 * Makes the log's new records durable, then its record count.
+	 */
+	private void commitLog() {
+		if (this.records == this.committed)
+			return;
+		for (int segment = (int) (this.committed >>> RECORD_SHIFT); segment <= (int) ((this.records - 1) >>> RECORD_SHIFT); segment++)
+			this.logSegments[segment].force();
+		this.logHeader.putLong(RECORDS_OFFSET, this.records);
+		this.logHeader.force();
+		this.committed = this.records;
+	}
+
+	/**
+	 * Flags the table as changed, on disk, before its first change since a
+	 * commit, so a crash mid-change makes the next open rebuild it.
+	 */
+	private void markDirty() {
+		this.tableHeader.putInt(DIRTY_OFFSET, 1);
+		this.tableHeader.force();
+		this.dirty = true;
+	}
+
+	/**
+	 * Points a serial number's slot at its latest record, growing the table first if need be.
+	 *
+	 * @param slot			Slot from {@link #find(long)} for the serial
+	 */
+	private void link(long serial, long slot, long record) throws IOException {
+		if (!occupied(slot)) {
+			if ((this.count + 1) * 10 > this.capacity * 7) {
+				grow();
+				slot = find(serial);
+			}
+			this.count++;
+		}
+		setSlot(this.tableSegments, slot, serial, record);
+	}
+
+	private Entry entry(long record) {
+		MappedByteBuffer segment = logSegment(record);
+		int at = recordOffset(record);
+		return new Entry(segment.getLong(at), segment.getLong(at + 8), segment.getLong(at + 16), segment.getLong(at + 24));
+	}
+
+	private static void createLog(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER);
+			raf.writeLong(LOG_MAGIC);
+			raf.writeInt(VERSION);
+			raf.writeInt(0);
+			raf.writeLong(0);
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void openLog() throws IOException {
+		this.log = new RandomAccessFile(this.file, "rw");
+		try {
+			FileChannel channel = this.log.getChannel();
+			if (channel.size() < HEADER)
+				throw new IOException(this.file + " is not an XVal index");
+			this.logHeader = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			if (this.logHeader.getLong(0) != LOG_MAGIC)
+				throw new IOException(this.file + " is not an XVal index");
+			if (this.logHeader.getInt(8) != VERSION)
+				throw new IOException(this.file + " is index version " + this.logHeader.getInt(8));
+			// Records past the committed count may be half written; they're overwritten
+			this.records = this.committed = this.logHeader.getLong(RECORDS_OFFSET);
+			if (this.records < 0)
+				throw new IOException(this.file + " is damaged");
+		} catch (IOException e) {
+			this.log.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return				The mapped log segment holding a record, mapped and the file extended if need be
+	 */
+	private MappedByteBuffer logSegment(long record) {
+		int segment = (int) (record >>> RECORD_SHIFT);
+		if (segment >= this.logSegments.length) {
+			MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(segment + 1, this.logSegments.length * 2)];
+			System.arraycopy(this.logSegments, 0, segments, 0, this.logSegments.length);
+			this.logSegments = segments;
+		}
+		MappedByteBuffer mapped = this.logSegments[segment];
+		if (mapped == null) {
+			long size = (long) RECORD << RECORD_SHIFT;
+			try {
+				mapped = this.log.getChannel().map(FileChannel.MapMode.READ_WRITE, HEADER + segment * size, size);
+			} catch (IOException e) {
+				// Out of disk or address space; nothing else can be done with this index
+				throw new IllegalStateException("Can't map index segment " + segment, e);
+			}
+			this.logSegments[segment] = mapped;
+		}
+		return mapped;
+	}
+
+	private static int recordOffset(long record) {
+		return (int) (record & ((1 << RECORD_SHIFT) - 1)) * RECORD;
+	}
+
+	/**
+	 * Maps the table if it covers exactly the committed log and wasn't left mid-change.
+	 *
+	 * @return				false if the table has to be rebuilt from the log
+	 */
+	private boolean openTable() throws IOException {
+		if (!this.tableFile.exists())
+			return false;
+		RandomAccessFile raf = new RandomAccessFile(this.tableFile, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER) {
+				raf.close();
+				return false;
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			long capacity = header.getLong(CAPACITY_OFFSET);
+			if (header.getLong(0) != TABLE_MAGIC || header.getInt(8) != VERSION || header.getInt(DIRTY_OFFSET) != 0
+					|| header.getLong(COVERED_OFFSET) != this.committed || capacity < 16 || Long.bitCount(capacity) != 1
+					|| channel.size() != HEADER + capacity * SLOT) {
+				raf.close();
+				return false;
+			}
+			useTable(raf, header, mapSlots(channel, capacity), capacity, header.getLong(COUNT_OFFSET));
+			return true;
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Builds a new table from the log and swaps it in.
+	 *
+	 * @param capacity		Slots to start with; the table grows as the log needs
+	 */
+	private void rebuild(int capacity) throws IOException {
+		replaceTable(tableSlots(capacity), null);
+		for (long record = 0; record < this.records; record++) {
+			long serial = logSegment(record).getLong(recordOffset(record)) & SERIAL_MASK;
+			link(serial, find(serial), record);
+		}
+		commit();
+	}
+
+	/**
+	 * Rebuilds the table at twice its capacity in a new file and swaps it in.
+	 */
+	private void grow() throws IOException {
+		replaceTable(this.capacity * 2, this.tableSegments);
+	}
+
+	/**
+	 * Writes a new table file holding the occupied slots of an old table,
+	 * if any, and renames it over the current one. The new table is marked
+	 * changed until the next commit.
+	 */
+	private void replaceTable(long capacity, MappedByteBuffer[] from) throws IOException {
+		File replacement = new File(this.tableFile.getPath() + ".grow");
+		RandomAccessFile raf = new RandomAccessFile(replacement, "rw");
+		long count = 0;
+		try {
+			raf.setLength(0);
+			raf.setLength(HEADER + capacity * SLOT);
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.putLong(0, TABLE_MAGIC);
+			header.putInt(8, VERSION);
+			header.putLong(CAPACITY_OFFSET, capacity);
+			header.putInt(DIRTY_OFFSET, 1);
+			MappedByteBuffer[] slots = mapSlots(channel, capacity);
+
+			if (from != null) {
+				int bits = Long.numberOfTrailingZeros(capacity);
+				for (long slot = 0; slot < this.capacity; slot++) {
+					MappedByteBuffer segment = from[(int) (slot >>> SLOT_SHIFT)];
+					int at = slotOffset(slot);
+					long key = segment.getLong(at);
+					if ((key & OCCUPIED) == 0)
+						continue;
+					long serial = key & SERIAL_MASK;
+					setSlot(slots, find(slots, bits, serial), serial, segment.getLong(at + 8));
+					count++;
+				}
+			}
+			// Not forced: it's marked changed, so if it doesn't survive a crash it's rebuilt
+			header.putLong(COUNT_OFFSET, count);
+
+			// Renamed over the old table in one step on POSIX. Elsewhere the old one
+			// has to go first, which is safe here since the log can rebuild it.
+			if (!replacement.renameTo(this.tableFile) && !(this.tableFile.delete() && replacement.renameTo(this.tableFile)))
+				throw new IOException("Can't replace " + this.tableFile);
+			if (this.table != null)
+				this.table.close();
+			useTable(raf, header, slots, capacity, count);
+			this.dirty = true;
+		} catch (IOException e) {
+			raf.close();
+			replacement.delete();
+			throw e;
+		}
+	}
+
+	private void useTable(RandomAccessFile raf, MappedByteBuffer header, MappedByteBuffer[] slots, long capacity, long count) {
+		this.table = raf;
+		this.tableHeader = header;
+		this.tableSegments = slots;
+		this.capacity = capacity;
+		this.capacityBits = Long.numberOfTrailingZeros(capacity);
+		this.count = count;
+	}
+
+	private static MappedByteBuffer[] mapSlots(FileChannel channel, long capacity) throws IOException {
+		long perSegment = Math.min(capacity, 1L << SLOT_SHIFT);
+		MappedByteBuffer[] segments = new MappedByteBuffer[(int) (capacity / perSegment)];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + i * perSegment * SLOT, perSegment * SLOT);
+		return segments;
+	}
+
+	/**
+	 * @return				A table capacity of at least 16 slots, rounded up to a power of two
+	 */
+	private static long tableSlots(int capacity) {
+		return Long.highestOneBit(Math.max(16, capacity) - 1) << 1;
+	}
+
+	private boolean occupied(long slot) {
+		return (this.tableSegments[(int) (slot >>> SLOT_SHIFT)].getLong(slotOffset(slot)) & OCCUPIED) != 0;
+	}
+
+	private long slotRecord(long slot) {
+		return this.tableSegments[(int) (slot >>> SLOT_SHIFT)].getLong(slotOffset(slot) + 8);
+	}
+
+	private static int slotOffset(long slot) {
+		return (int) (slot & ((1 << SLOT_SHIFT) - 1)) * SLOT;
+	}
+
+	private static void setSlot(MappedByteBuffer[] slots, long slot, long serial, long record) {
+		MappedByteBuffer segment = slots[(int) (slot >>> SLOT_SHIFT)];
+		int at = slotOffset(slot);
+		segment.putLong(at, OCCUPIED | serial);
+		segment.putLong(at + 8, record);
+	}
+
+	/**
+	 * Finds the slot holding a serial number, or the empty slot where it belongs.
+	 */
+	private long find(long serial) {
+		return find(this.tableSegments, this.capacityBits, serial);
+	}
+
+	private static long find(MappedByteBuffer[] slots, int bits, long serial) {
+		long mask = (1L << bits) - 1;
+		long slot = (serial * 0x9E3779B97F4A7C15L) >>> (64 - bits);
+		while (true) {
+			long key = slots[(int) (slot >>> SLOT_SHIFT)].getLong(slotOffset(slot));
+			if ((key & OCCUPIED) == 0 || (key & SERIAL_MASK) == serial)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * One audit of a console.
+	 */
+	public static final class Entry {
+		private final long key, encrypted, decrypted, timestamp;
+
+		Entry(long key, long encrypted, long decrypted, long timestamp) {
+			this.key = key;
+			this.encrypted = encrypted;
+			this.decrypted = decrypted;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * @return			Console serial number as a number
+		 */
+		public long getSerial() {
+			return this.key & SERIAL_MASK;
+		}
+
+		/**
+		 * @return			Encrypted 'X' value
+		 */
+		public long getEncrypted() {
+			return this.encrypted;
+		}
+
+		/**
+		 * @return			Decrypted 'X' value
+		 */
+		public long getDecrypted() {
+			return this.decrypted;
+		}
+
+		/**
+		 * @return			Compact flag mask; see {@link SecdataFlags#compactMask(long)}
+		 */
+		public int getFlagMask() {
+			return (int) (this.key >>> 40) & 0xFFFF;
+		}
+
+		/**
+		 * @return			Audit time, milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		/**
+		 * @return			The decrypted 'X' value's flags
+		 */
+		public SecdataFlags getFlags() {
+			return SecdataFlags.valueOf(this.decrypted);
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package org.cooltrainer.xval;
+
+/**
+ * The XValKernel class performs the same decryption as {@link XVal#DecryptXVal(String, byte[])}
+ * without going through JCE. HMAC-SHA1 and DES are specialized for this one job
+ * and work on primitive state held by the kernel, so a decryption allocates nothing.
+ *
+ * The HMAC key is the twelve ASCII digits of the serial plus a terminating zero
+ * and the message is always "XBOX360SSB", so most of both SHA-1 inputs is constant.
+ * The inner hash's second block is expanded once, at class load.
+ *
+ * A kernel holds scratch state and is not thread-safe. Give each thread its own.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class XValKernel {
+	private static final int IPAD = 0x36363636;
+	private static final int OPAD = 0x5C5C5C5C;
+
+	/** Inner hash second block: "XBOX360SSB", SHA-1 padding, length of 64 + 10 bytes */
+	private static final int[] INNER_TAIL = new int[80];
+
+	/** Powers of ten for extracting the digits of a packed serial */
+	private static final long[] POW10 = new long[12];
+
+	static {
+		INNER_TAIL[0] = 0x58424F58; // "XBOX"
+		INNER_TAIL[1] = 0x33363053; // "360S"
+		INNER_TAIL[2] = 0x53428000; // "SB", padding
+		INNER_TAIL[15] = (64 + 10) * 8;
+		expand(INNER_TAIL);
+
+		long pow = 1;
+		for (int i = 11; i >= 0; i--) {
+			POW10[i] = pow;
+			pow *= 10;
+		}
+	}
+
+	/** Kernels shared by code that decrypts on whatever thread calls it */
+	private static final ThreadLocal<XValKernel> threadKernel = new ThreadLocal<XValKernel>() {
+		@Override
+		protected XValKernel initialValue() {
+			return new XValKernel();
+		}
+	};
+
+	private final int[] w = new int[80];
+	private final long[] schedule = new long[16];
+	private int h0, h1, h2, h3, h4;
+
+	/** Created on first batch use, so single-pair kernels stay small */
+	private BitslicedDes bitsliced;
+	private long[] keys, missedBlocks;
+	/** Indexes of pairs whose keys weren't cached, gathered for bit-slicing */
+	private int[] missed;
+
+	/**
+	 * Decrypts a serial number / 'X' value pair.
+	 *
+	 * @param serial			Console serial number as a number, 0 through 999999999999
+	 * @param encryptedXVal		Encrypted 'X' value, big-endian
+	 * @return					Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	public long decrypt(long serial, long encryptedXVal) {
+		Des.schedule(deriveKey(serial), this.schedule);
+		return Des.decrypt(this.schedule, encryptedXVal);
+	}
+
+	/**
+	 * Encrypts a decrypted 'X' value with a serial number's key, giving the
+	 * 'X' value that console would display.
+	 *
+	 * @param serial			Console serial number as a number, 0 through 999999999999
+	 * @param decryptedXVal		Decrypted 'X' value, big-endian: high word, then low word
+	 * @return					Encrypted 'X' value, big-endian
+	 */
+	public long encrypt(long serial, long decryptedXVal) {
+		Des.schedule(deriveKey(serial), this.schedule);
+		return Des.encrypt(this.schedule, decryptedXVal);
+	}
+
+	/**
+	 * Decrypts an 'X' value with a key schedule prepared by {@link #schedule(long)}.
+	 *
+	 * @param schedule			DES key schedule for the console's serial number
+	 * @param encryptedXVal		Encrypted 'X' value, big-endian
+	 * @return					Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	public static long decrypt(long[] schedule, long encryptedXVal) {
+		return Des.decrypt(schedule, encryptedXVal);
+	}
+
+	/**
+	 * Derives and expands the DES key for a serial number into a new key schedule,
+	 * suitable for keeping and reusing with {@link #decrypt(long[], long)}.
+	 *
+	 * @param serial			Console serial number as a number, 0 through 999999999999
+	 * @return					DES key schedule
+	 */
+	public long[] schedule(long serial) {
+		long[] schedule = new long[16];
+		Des.schedule(deriveKey(serial), schedule);
+		return schedule;
+	}
+
+	/**
+	 * Decrypts a run of serial number / 'X' value pairs. Whole groups of
+	 * {@value BitslicedDes#LANES} pairs go through bit-sliced DES in one pass;
+	 * any remainder is decrypted one pair at a time.
+	 *
+	 * @param serials			Console serial numbers as numbers, 0 through 999999999999
+	 * @param encrypted			Encrypted 'X' values, in the same order as serials
+	 * @param decrypted			Receives decrypted 'X' values, in input order
+	 * @param from				Index of the first pair
+	 * @param to				Index after the last pair
+	 */
+	public void decrypt(long[] serials, long[] encrypted, long[] decrypted, int from, int to) {
+		decryptUncached(serials, encrypted, decrypted, from, to);
+	}
+
+	/**
+	 * Decrypts a run of serial number / 'X' value pairs, taking keys from a
+	 * cache where it has them. Pairs whose keys are cached are decrypted
+	 * straight away with their cached schedules. The rest are gathered, and
+	 * each group of {@value BitslicedDes#LANES} goes through bit-sliced DES
+	 * with freshly derived keys, which are then added to the cache.
+	 *
+	 * @param serials			Console serial numbers as numbers, 0 through 999999999999
+	 * @param encrypted			Encrypted 'X' values, in the same order as serials
+	 * @param decrypted			Receives decrypted 'X' values, in input order
+	 * @param from				Index of the first pair
+	 * @param to				Index after the last pair
+	 * @param keyCache			Cache of derived keys, or null to derive every key
+	 */
+	public void decrypt(long[] serials, long[] encrypted, long[] decrypted, int from, int to, XValKeyCache keyCache) {
+		if (keyCache == null) {
+			decryptUncached(serials, encrypted, decrypted, from, to);
+			return;
+		}
+
+		int misses = 0;
+		for (int i = from; i < to; i++) {
+			long[] schedule = keyCache.cachedSchedule(serials[i]);
+			if (schedule != null) {
+				decrypted[i] = Des.decrypt(schedule, encrypted[i]);
+				continue;
+			}
+			if (this.missed == null)
+				this.missed = new int[BitslicedDes.LANES];
+			this.missed[misses++] = i;
+			if (misses == BitslicedDes.LANES) {
+				decryptMissed(serials, encrypted, decrypted, misses, keyCache);
+				misses = 0;
+			}
+		}
+		decryptMissed(serials, encrypted, decrypted, misses, keyCache);
+	}
+
+	/**
+	 * Derives the DES key for a serial number: the first eight bytes of
+	 * HMAC-SHA1("XBOX360SSB") keyed with the zero-terminated serial.
+	 *
+	 * @param serial			Console serial number as a number, 0 through 999999999999
+	 * @return					DES key, big-endian
+	 */
+	public long deriveKey(long serial) {
+		int k0 = digits(serial, 0);
+		int k1 = digits(serial, 4);
+		int k2 = digits(serial, 8);
+
+		// Inner hash: (key ^ ipad) block, then the constant message block.
+		// Key bytes past the twelve digits are zero, so their words are just the pad.
+		reset();
+		keyBlock(k0 ^ IPAD, k1 ^ IPAD, k2 ^ IPAD, IPAD);
+		expand(this.w);
+		compress(this.w);
+		compress(INNER_TAIL);
+
+		int i0 = this.h0, i1 = this.h1, i2 = this.h2, i3 = this.h3, i4 = this.h4;
+
+		// Outer hash: (key ^ opad) block, then the inner digest
+		reset();
+		keyBlock(k0 ^ OPAD, k1 ^ OPAD, k2 ^ OPAD, OPAD);
+		expand(this.w);
+		compress(this.w);
+
+		int[] w = this.w;
+		w[0] = i0;
+		w[1] = i1;
+		w[2] = i2;
+		w[3] = i3;
+		w[4] = i4;
+		w[5] = 0x80000000;
+		for (int i = 6; i < 15; i++)
+			w[i] = 0;
+		w[15] = (64 + 20) * 8;
+		expand(w);
+		compress(w);
+
+		return ((long) this.h0 << 32) | (this.h1 & 0xFFFFFFFFL);
+	}
+
+	private void decryptUncached(long[] serials, long[] encrypted, long[] decrypted, int from, int to) {
+		int i = from;
+		if (to - from >= BitslicedDes.LANES) {
+			prepareBitsliced();
+			for (; i + BitslicedDes.LANES <= to; i += BitslicedDes.LANES) {
+				for (int lane = 0; lane < BitslicedDes.LANES; lane++) {
+					this.keys[lane] = deriveKey(serials[i + lane]);
+				}
+				this.bitsliced.decrypt(this.keys, encrypted, decrypted, 0, i);
+			}
+		}
+		for (; i < to; i++) {
+			decrypted[i] = decrypt(serials[i], encrypted[i]);
+		}
+	}
+
+	/**
+	 * Decrypts gathered cache misses, derives their keys and caches them. A
+	 * full group goes through bit-sliced DES; a smaller one, one pair at a time.
+	 *
+	 * @param count				Number of indexes gathered in missed
+	 */
+	private void decryptMissed(long[] serials, long[] encrypted, long[] decrypted, int count, XValKeyCache keyCache) {
+		if (count == BitslicedDes.LANES) {
+			prepareBitsliced();
+			for (int lane = 0; lane < count; lane++) {
+				int i = this.missed[lane];
+				this.keys[lane] = deriveKey(serials[i]);
+				this.missedBlocks[lane] = encrypted[i];
+			}
+			this.bitsliced.decrypt(this.keys, this.missedBlocks, this.missedBlocks, 0, 0);
+			for (int lane = 0; lane < count; lane++) {
+				int i = this.missed[lane];
+				decrypted[i] = this.missedBlocks[lane];
+				keyCache.putKey(serials[i], this.keys[lane]);
+			}
+			return;
+		}
+		for (int lane = 0; lane < count; lane++) {
+			int i = this.missed[lane];
+			long key = deriveKey(serials[i]);
+			Des.schedule(key, this.schedule);
+			decrypted[i] = Des.decrypt(this.schedule, encrypted[i]);
+			keyCache.putKey(serials[i], key);
+		}
+	}
+
+	private void prepareBitsliced() {
+		if (this.bitsliced == null) {
+			this.bitsliced = new BitslicedDes();
+			this.keys = new long[BitslicedDes.LANES];
+			this.missedBlocks = new long[BitslicedDes.LANES];
+		}
+	}
+
+	/**
+	 * Gets a kernel belonging to the calling thread.
+	 *
+	 * @return					This thread's kernel
+	 */
+	static XValKernel forCurrentThread() {
+		return threadKernel.get();
+	}
+
+	/**
+	 * Packs four ASCII digits of a serial, most significant first, into a big-endian word.
+	 *
+	 * @param serial			Console serial number as a number
+	 * @param first				Index of the first digit, 0 being the leftmost of twelve
+	 */
+	private static int digits(long serial, int first) {
+		int word = 0;
+		for (int i = first; i < first + 4; i++) {
+			word = (word << 8) | ('0' + (int) ((serial / POW10[i]) % 10));
+		}
+		return word;
+	}
+
+	private void keyBlock(int w0, int w1, int w2, int pad) {
+		int[] w = this.w;
+		w[0] = w0;
+		w[1] = w1;
+		w[2] = w2;
+		for (int i = 3; i < 16; i++)
+			w[i] = pad;
+	}
+
+	private void reset() {
+		this.h0 = 0x67452301;
+		this.h1 = 0xEFCDAB89;
+		this.h2 = 0x98BADCFE;
+		this.h3 = 0x10325476;
+		this.h4 = 0xC3D2E1F0;
+	}
+
+	/**
+	 * Fills in words 16 through 79 of a SHA-1 message schedule.
+	 */
+	private static void expand(int[] w) {
+		for (int t = 16; t < 80; t++) {
+			int x = w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16];
+			w[t] = (x << 1) | (x >>> 31);
+		}
+	}
+
+	/**
+	 * Runs the SHA-1 compression function over an expanded message schedule.
+	 */
+	private void compress(int[] w) {
+		int a = this.h0, b = this.h1, c = this.h2, d = this.h3, e = this.h4;
+		int t;
+
+		for (t = 0; t < 20; t++) {
+			int temp = ((a << 5) | (a >>> 27)) + ((b & c) | (~b & d)) + e + w[t] + 0x5A827999;
+			e = d;
+			d = c;
+			c = (b << 30) | (b >>> 2);
+			b = a;
+			a = temp;
+		}
+		for (; t < 40; t++) {
+			int temp = ((a << 5) | (a >>> 27)) + (b ^ c ^ d) + e + w[t] + 0x6ED9EBA1;
+			e = d;
+			d = c;
+			c = (b << 30) | (b >>> 2);
+			b = a;
+			a = temp;
+		}
+		for (; t < 60; t++) {
+			int temp = ((a << 5) | (a >>> 27)) + ((b & c) | (b & d) | (c & d)) + e + w[t] + 0x8F1BBCDC;
+			e = d;
+			d = c;
+			c = (b << 30) | (b >>> 2);
+			b = a;
+			a = temp;
+		}
+		for (; t < 80; t++) {
+			int temp = ((a << 5) | (a >>> 27)) + (b ^ c ^ d) + e + w[t] + 0xCA62C1D6;
+			e = d;
+			d = c;
+			c = (b << 30) | (b >>> 2);
+			b = a;
+			a = temp;
+		}
+
+		this.h0 += a;
+		this.h1 += b;
+		this.h2 += c;
+		this.h3 += d;
+		this.h4 += e;
+	}
+}
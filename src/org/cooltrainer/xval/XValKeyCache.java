@@ -0,0 +1,238 @@
+package org.cooltrainer.xval;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The XValKeyCache class remembers the DES keys derived from recently
+ * seen serial numbers, so checking the same console again skips HMAC-SHA1
+ * key derivation entirely.
+ *
+ * The cache holds at most a fixed number of serials. It is split into
+ * stripes by serial number, each with its own lock and its own share of
+ * the capacity, so threads looking up different serials rarely wait on
+ * each other. A full stripe evicts its least recently used serial. It is
+ * safe to share between threads.
+ *
+ * Each serial's key is kept along with its expanded key schedule. The
+ * schedule is made the first time a cached key is used, so a batch that
+ * misses can derive its keys and decrypt them through bit-sliced DES, and
+ * only pays for the schedule if the serial comes back.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValKeyCache {
+	/** Most stripes a cache is split into */
+	private static final int MAX_STRIPES = 64;
+
+	private final int capacity;
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	/**
+	 * @param capacity		Maximum number of serials to remember, at least one
+	 */
+	public XValKeyCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Cache capacity must be at least one");
+		this.capacity = capacity;
+
+		// Two stripes per processor, but never a stripe with no room
+		int wanted = Math.min(MAX_STRIPES, 2 * Runtime.getRuntime().availableProcessors());
+		int count = Integer.highestOneBit(Math.max(1, Math.min(wanted, capacity)));
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++)
+			this.stripes[i] = new Stripe(capacity / count + (i < capacity % count ? 1 : 0));
+		this.stripeMask = count - 1;
+	}
+
+	/**
+	 * Gets the key schedule for a serial number, deriving and caching it on a miss.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @param kernel		The calling thread's kernel, used to derive missing keys
+	 * @return				DES key schedule for the serial
+	 */
+	long[] schedule(long serial, XValKernel kernel) {
+		Cached entry = lookup(serial);
+		if (entry == null) {
+			// Derive outside the lock; a racing thread may derive the same key, which is harmless
+			entry = new Cached(kernel.deriveKey(serial));
+			put(serial, entry);
+		}
+		return entry.schedule();
+	}
+
+	/**
+	 * Gets the key schedule for a serial number if it's cached, without deriving it.
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @return				DES key schedule for the serial, or null on a miss
+	 */
+	long[] cachedSchedule(long serial) {
+		Cached entry = lookup(serial);
+		return (entry == null) ? null : entry.schedule();
+	}
+
+	/**
+	 * Caches a key derived after a miss. Its schedule is expanded when first needed.
+	 *
+	 * @param serial		Console serial number as a number, 0 through 999999999999
+	 * @param key			DES key for the serial, big-endian
+	 */
+	void putKey(long serial, long key) {
+		put(serial, new Cached(key));
+	}
+
+	/**
+	 * Forgets every cached key. Counters are kept.
+	 */
+	public void clear() {
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return				Maximum number of serials this cache remembers
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return				Number of serials currently cached
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return				Lookups answered from the cache
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				hits += stripe.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return				Lookups that had to derive a key
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				misses += stripe.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return				Keys dropped to stay within capacity
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for (Stripe stripe : this.stripes) {
+			synchronized (stripe) {
+				evictions += stripe.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	public String toString() {
+		return "XValKeyCache[size=" + size() + "/" + this.capacity + ", hits=" + getHits()
+				+ ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * @return				The serial's entry, or null on a miss
+	 */
+	private Cached lookup(long serial) {
+		Stripe stripe = stripe(serial);
+		synchronized (stripe) {
+			Cached entry = stripe.get(Long.valueOf(serial));
+			if (entry != null)
+				stripe.hits++;
+			else
+				stripe.misses++;
+			return entry;
+		}
+	}
+
+	private void put(long serial, Cached entry) {
+		Stripe stripe = stripe(serial);
+		synchronized (stripe) {
+			stripe.put(Long.valueOf(serial), entry);
+		}
+	}
+
+	private Stripe stripe(long serial) {
+		// Upper bits of a multiplicative hash, since consecutive serials differ only in their low bits
+		return this.stripes[(int) ((serial * 0x9E3779B97F4A7C15L) >>> 40) & this.stripeMask];
+	}
+
+	/**
+	 * A cached key, and its schedule once something has needed it.
+	 */
+	private static final class Cached {
+		private final long key;
+		private volatile long[] schedule;
+
+		Cached(long key) {
+			this.key = key;
+		}
+
+		long[] schedule() {
+			long[] schedule = this.schedule;
+			if (schedule == null) {
+				// Racing threads may both expand it, which is harmless
+				schedule = new long[16];
+				Des.schedule(this.key, schedule);
+				this.schedule = schedule;
+			}
+			return schedule;
+		}
+	}
+
+	/**
+	 * One stripe of the cache: an access-ordered map, guarded by its own monitor.
+	 */
+	private static final class Stripe extends LinkedHashMap<Long, Cached> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+		long hits, misses, evictions;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+			if (size() > this.capacity) {
+				this.evictions++;
+				return true;
+			}
+			return false;
+		}
+	}
+}
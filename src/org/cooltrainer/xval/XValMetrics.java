@@ -0,0 +1,272 @@
+package org.cooltrainer.xval;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the outcomes of {@link XVal} checks and times each stage of them,
+ * for finding out where a slow batch spends its time.
+ *
+ * Metrics are off unless the xval.metrics system property is true or
+ * {@link #setEnabled(boolean)} turns them on. While off, each instrumented
+ * call costs one volatile read. While on, every thread counts into one of
+ * several stripes picked by its thread ID, so threads on different cores
+ * don't fight over the same counters; {@link #snapshot()} adds the stripes up.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValMetrics {
+	/** Building an {@link XVal} from strings, decryption included */
+	public static final int CONSTRUCT = 0;
+	/** Decrypting a pair, in {@link XVal#DecryptXVal(String, byte[])} or with a cached key */
+	public static final int DECRYPT = 1;
+	/** Describing or looking up an X value's flags */
+	public static final int FLAGS = 2;
+	/** Parsing a serial number into an {@link Xbox360} */
+	public static final int PARSE = 3;
+	private static final int STAGES = 4;
+	private static final String[] STAGE_NAMES = { "construct", "decrypt", "flags", "parse" };
+
+	private static final int CLEAN = 0, FLAGGED = 1, INVALID = 2, ERROR = 3;
+	private static final int OUTCOMES = 4;
+
+	/** Unused longs on either side of a stripe's counters, so neighbouring stripes never share a cache line */
+	private static final int PAD = 8;
+
+	private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+	private static volatile boolean enabled = Boolean.getBoolean("xval.metrics");
+
+	/** Created the first time a thread mapping to each one counts something */
+	private static final AtomicReferenceArray<Stripe> stripes = new AtomicReferenceArray<Stripe>(STRIPES);
+
+	/** Errors are rare, so one shared map of counts by cause is enough */
+	private static final ConcurrentHashMap<String, AtomicLong> errorCauses = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * One stripe's share of the counts and timings.
+	 */
+	private static class Stripe {
+		final AtomicLongArray outcomes = new AtomicLongArray(PAD + OUTCOMES + PAD);
+		final LatencyHistogram[] latency = new LatencyHistogram[STAGES];
+
+		Stripe() {
+			for (int stage = 0; stage < STAGES; stage++)
+				this.latency[stage] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * @return				true if metrics are being collected
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops collecting metrics. What's been collected is kept either way.
+	 *
+	 * @param enable		true to collect metrics
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Adds up every thread's counts and timings so far.
+	 *
+	 * @return				Totals, unaffected by anything counted later
+	 */
+	public static Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		for (int i = 0; i < STRIPES; i++) {
+			Stripe stripe = stripes.get(i);
+			if (stripe == null)
+				continue;
+			for (int outcome = 0; outcome < OUTCOMES; outcome++)
+				snapshot.outcomes[outcome] += stripe.outcomes.get(PAD + outcome);
+			for (int stage = 0; stage < STAGES; stage++)
+				snapshot.latency[stage].add(stripe.latency[stage]);
+		}
+		for (Map.Entry<String, AtomicLong> entry : errorCauses.entrySet())
+			snapshot.errorCauses.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+		return snapshot;
+	}
+
+	/**
+	 * Forgets every count and timing.
+	 */
+	public static void reset() {
+		for (int i = 0; i < STRIPES; i++) {
+			Stripe stripe = stripes.get(i);
+			if (stripe == null)
+				continue;
+			for (int outcome = 0; outcome < OUTCOMES; outcome++)
+				stripe.outcomes.set(PAD + outcome, 0);
+			for (int stage = 0; stage < STAGES; stage++)
+				stripe.latency[stage].reset();
+		}
+		errorCauses.clear();
+	}
+
+	/**
+	 * Marks the start of a timed stage.
+	 *
+	 * @return				Start time to pass to {@link #stop(int, long)}, or 0 if metrics are off
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records how long a stage took.
+	 *
+	 * @param stage			One of the stage constants
+	 * @param start			What {@link #start()} returned
+	 */
+	static void stop(int stage, long start) {
+		if (start != 0)
+			stripe().latency[stage].record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Counts one decrypted pair by its outcome.
+	 *
+	 * @param decrypted		Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	static void outcome(long decrypted) {
+		if (!enabled)
+			return;
+		int outcome = XVal.isClean(decrypted) ? CLEAN : XVal.isValidPair(decrypted) ? FLAGGED : INVALID;
+		stripe().outcomes.incrementAndGet(PAD + outcome);
+	}
+
+	/**
+	 * Counts a failed check by its cause, for use as
+	 * <code>throw XValMetrics.error(new XValException(...))</code>.
+	 *
+	 * @param e				Exception about to be thrown
+	 * @return				e
+	 */
+	static XValException error(XValException e) {
+		if (!enabled)
+			return e;
+		stripe().outcomes.incrementAndGet(PAD + ERROR);
+
+		// Wrapped exceptions are told apart by type; our own by message
+		String cause = (e.getCause() != null) ? e.getCause().getClass().getSimpleName() : String.valueOf(e.getMessage());
+		AtomicLong count = errorCauses.get(cause);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = errorCauses.putIfAbsent(cause, created);
+			if (count == null)
+				count = created;
+		}
+		count.incrementAndGet();
+		return e;
+	}
+
+	private static Stripe stripe() {
+		int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		Stripe stripe = stripes.get(index);
+		if (stripe == null) {
+			stripes.compareAndSet(index, null, new Stripe());
+			stripe = stripes.get(index);
+		}
+		return stripe;
+	}
+
+	/**
+	 * @return				A power of two at least twice the processor count, so busy threads rarely share a stripe
+	 */
+	private static int stripes(int processors) {
+		int stripes = 4;
+		while (stripes < processors * 2 && stripes < 64)
+			stripes <<= 1;
+		return stripes;
+	}
+
+	/**
+	 * Metrics added up at one moment.
+	 */
+	public static class Snapshot {
+		final long[] outcomes = new long[OUTCOMES];
+		final LatencyHistogram[] latency = new LatencyHistogram[STAGES];
+		final Map<String, Long> errorCauses = new TreeMap<String, Long>();
+
+		Snapshot() {
+			for (int stage = 0; stage < STAGES; stage++)
+				this.latency[stage] = new LatencyHistogram();
+		}
+
+		/**
+		 * @return			Valid pairs with no secdata flags
+		 */
+		public long getClean() {
+			return this.outcomes[CLEAN];
+		}
+
+		/**
+		 * @return			Valid pairs with secdata flags
+		 */
+		public long getFlagged() {
+			return this.outcomes[FLAGGED];
+		}
+
+		/**
+		 * @return			Serial numbers and 'X' values that don't belong together
+		 */
+		public long getInvalid() {
+			return this.outcomes[INVALID];
+		}
+
+		/**
+		 * @return			Checks that failed with an {@link XValException}
+		 */
+		public long getErrors() {
+			return this.outcomes[ERROR];
+		}
+
+		/**
+		 * @return			Failed checks by cause: the wrapped exception's type, or the message if nothing was wrapped
+		 */
+		public Map<String, Long> getErrorCauses() {
+			return this.errorCauses;
+		}
+
+		/**
+		 * @param stage		One of the stage constants
+		 * @return			Durations of that stage, in nanoseconds
+		 */
+		public LatencyHistogram getLatency(int stage) {
+			return this.latency[stage];
+		}
+
+		/**
+		 * Lists every count and stage timing, one per line.
+		 */
+		public String toString() {
+			StringBuilder out = new StringBuilder(512);
+			out.append("clean ").append(getClean())
+					.append(", flagged ").append(getFlagged())
+					.append(", invalid ").append(getInvalid())
+					.append(", errors ").append(getErrors()).append('\n');
+			for (Map.Entry<String, Long> entry : this.errorCauses.entrySet())
+				out.append("error ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+			// Stages can take well under a microsecond, so these are in nanoseconds
+			for (int stage = 0; stage < STAGES; stage++) {
+				LatencyHistogram latency = this.latency[stage];
+				out.append(STAGE_NAMES[stage]).append(": ").append(latency.getCount())
+						.append(" samples, p50 ").append(latency.getPercentile(50))
+						.append(" ns, p99 ").append(latency.getPercentile(99))
+						.append(" ns, max ").append(latency.getMax()).append(" ns\n");
+			}
+			return out.toString();
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package org.cooltrainer.xval;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The XValParser class validates and decodes serial numbers and 'X' values
+ * in a single pass over their characters, without making intermediate Strings.
+ *
+ * Serial numbers are twelve ASCII digits and decode to their numeric value,
+ * 0 through 999999999999. 'X' values are sixteen hexadecimal digits in either
+ * case with any number of dashes, as shown in the Dashboard, and decode to the
+ * big-endian 64-bit value of those digits.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class XValParser {
+	/** Returned by the parseSerial methods for anything that isn't a serial number */
+	public static final long INVALID_SERIAL = -1L;
+
+	private static final int SERIAL_DIGITS = 12;
+	private static final int XVAL_DIGITS = 16;
+
+	/** Value of each ASCII hex digit, -1 for every other character */
+	private static final byte[] HEX_VALUE = new byte[128];
+
+	static {
+		for (int i = 0; i < HEX_VALUE.length; i++)
+			HEX_VALUE[i] = -1;
+		for (int i = 0; i < 10; i++)
+			HEX_VALUE['0' + i] = (byte) i;
+		for (int i = 0; i < 6; i++) {
+			HEX_VALUE['A' + i] = (byte) (10 + i);
+			HEX_VALUE['a' + i] = (byte) (10 + i);
+		}
+	}
+
+	private XValParser() {
+	}
+
+	/**
+	 * Parses a serial number.
+	 *
+	 * @param serial		Serial number to evaluate
+	 * @return				The serial as a number, or {@link #INVALID_SERIAL}
+	 */
+	public static long parseSerial(CharSequence serial) {
+		int len = serial.length();
+		if (len != SERIAL_DIGITS)
+			return INVALID_SERIAL;
+		long value = 0;
+		for (int i = 0; i < len; i++) {
+			int d = serial.charAt(i) - '0';
+			if (d < 0 || d > 9)
+				return INVALID_SERIAL;
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a serial number.
+	 *
+	 * @param serial		Characters holding the serial number
+	 * @param offset		Index of the first character
+	 * @param length		Number of characters
+	 * @return				The serial as a number, or {@link #INVALID_SERIAL}
+	 */
+	public static long parseSerial(char[] serial, int offset, int length) {
+		if (length != SERIAL_DIGITS)
+			return INVALID_SERIAL;
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int d = serial[i] - '0';
+			if (d < 0 || d > 9)
+				return INVALID_SERIAL;
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a serial number from ASCII bytes. The buffer's position is left alone.
+	 *
+	 * @param serial		Buffer holding the serial number
+	 * @param start			Index of the first byte
+	 * @param end			Index after the last byte
+	 * @return				The serial as a number, or {@link #INVALID_SERIAL}
+	 */
+	public static long parseSerial(ByteBuffer serial, int start, int end) {
+		if (end - start != SERIAL_DIGITS)
+			return INVALID_SERIAL;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int d = serial.get(i) - '0';
+			if (d < 0 || d > 9)
+				return INVALID_SERIAL;
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Checks an 'X' value without decoding it.
+	 *
+	 * @param xval			'X' value to evaluate
+	 * @return				true if it is sixteen hexadecimal digits, dashes aside
+	 */
+	public static boolean isXVal(CharSequence xval) {
+		int digits = 0;
+		for (int i = 0; i < xval.length(); i++) {
+			char c = xval.charAt(i);
+			if (c == '-')
+				continue;
+			if (c >= HEX_VALUE.length || HEX_VALUE[c] < 0)
+				return false;
+			digits++;
+		}
+		return digits == XVAL_DIGITS;
+	}
+
+	/**
+	 * Parses an 'X' value. Every 64-bit value is a possible 'X' value, so
+	 * validity is returned separately from the value.
+	 *
+	 * @param xval			'X' value to evaluate
+	 * @param out			Receives the value if it is valid
+	 * @param index			Index in out to store the value at
+	 * @return				true if xval is sixteen hexadecimal digits, dashes aside
+	 */
+	public static boolean parseXVal(CharSequence xval, long[] out, int index) {
+		long value = 0;
+		int digits = 0;
+		for (int i = 0; i < xval.length(); i++) {
+			char c = xval.charAt(i);
+			if (c == '-')
+				continue;
+			if (c >= HEX_VALUE.length || HEX_VALUE[c] < 0 || ++digits > XVAL_DIGITS)
+				return false;
+			value = (value << 4) | HEX_VALUE[c];
+		}
+		if (digits != XVAL_DIGITS)
+			return false;
+		out[index] = value;
+		return true;
+	}
+
+	/**
+	 * Parses an 'X' value; see {@link #parseXVal(CharSequence, long[], int)}.
+	 *
+	 * @param xval			Characters holding the 'X' value
+	 * @param offset		Index of the first character
+	 * @param length		Number of characters
+	 * @param out			Receives the value if it is valid
+	 * @param index			Index in out to store the value at
+	 * @return				true if the characters are sixteen hexadecimal digits, dashes aside
+	 */
+	public static boolean parseXVal(char[] xval, int offset, int length, long[] out, int index) {
+		long value = 0;
+		int digits = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char c = xval[i];
+			if (c == '-')
+				continue;
+			if (c >= HEX_VALUE.length || HEX_VALUE[c] < 0 || ++digits > XVAL_DIGITS)
+				return false;
+			value = (value << 4) | HEX_VALUE[c];
+		}
+		if (digits != XVAL_DIGITS)
+			return false;
+		out[index] = value;
+		return true;
+	}
+
+	/**
+	 * Parses an 'X' value from ASCII bytes; see {@link #parseXVal(CharSequence, long[], int)}.
+	 * The buffer's position is left alone.
+	 *
+	 * @param xval			Buffer holding the 'X' value
+	 * @param start			Index of the first byte
+	 * @param end			Index after the last byte
+	 * @param out			Receives the value if it is valid
+	 * @param index			Index in out to store the value at
+	 * @return				true if the bytes are sixteen hexadecimal digits, dashes aside
+	 */
+	public static boolean parseXVal(ByteBuffer xval, int start, int end, long[] out, int index) {
+		// Plain digits, the usual case in bulk files, take the eight-at-a-time path
+		if (end - start == XVAL_DIGITS && HexCodec.decode(xval, start, XVAL_DIGITS, out, index, 1) == 1)
+			return true;
+
+		long value = 0;
+		int digits = 0;
+		for (int i = start; i < end; i++) {
+			int c = xval.get(i);
+			if (c == '-')
+				continue;
+			if (c < 0 || HEX_VALUE[c] < 0 || ++digits > XVAL_DIGITS)
+				return false;
+			value = (value << 4) | HEX_VALUE[c];
+		}
+		if (digits != XVAL_DIGITS)
+			return false;
+		out[index] = value;
+		return true;
+	}
+
+	/**
+	 * Parses one input row, serial,xval[,anything else], into batch arrays.
+	 * Fields are separated by a comma, tab or semicolon, or by spaces alone,
+	 * and spaces and quotes around a field are ignored. The buffer's position
+	 * is left alone.
+	 *
+	 * @param buf			Buffer holding the row as ASCII bytes
+	 * @param start			Index of the row's first byte
+	 * @param end			Index after the row's last byte, line break excluded
+	 * @param serials		Receives the serial number if the row is well-formed
+	 * @param encrypted		Receives the 'X' value if the row is well-formed
+	 * @param row			Index in serials and encrypted to store the row at
+	 * @return				true if the row holds a serial number and an 'X' value
+	 */
+	static boolean parseRow(ByteBuffer buf, int start, int end, long[] serials, long[] encrypted, int row) {
+		start = skipPadding(buf, start, end);
+		int serialEnd = nextSeparator(buf, start, end);
+		if (serialEnd == end)
+			return false;
+		long serial = parseSerial(buf, start, trimPadding(buf, start, serialEnd));
+		if (serial == INVALID_SERIAL)
+			return false;
+
+		int xvalStart = nextField(buf, serialEnd, end);
+		int xvalEnd = nextSeparator(buf, xvalStart, end);
+		if (!parseXVal(buf, xvalStart, trimPadding(buf, xvalStart, xvalEnd), encrypted, row))
+			return false;
+
+		serials[row] = serial;
+		return true;
+	}
+
+	/**
+	 * @return				true if a row holds nothing but spaces and quotes
+	 */
+	static boolean isBlankRow(ByteBuffer buf, int start, int end) {
+		return skipPadding(buf, start, end) == end;
+	}
+
+	/**
+	 * Skips spaces and quotes, which spreadsheet exports like to add around fields.
+	 */
+	private static int skipPadding(ByteBuffer buf, int i, int end) {
+		while (i < end) {
+			byte b = buf.get(i);
+			if (b != ' ' && b != '"' && b != '\'')
+				break;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Trims spaces and quotes from the end of a field.
+	 *
+	 * @return				Index after the field's last other byte
+	 */
+	private static int trimPadding(ByteBuffer buf, int start, int end) {
+		while (end > start) {
+			byte b = buf.get(end - 1);
+			if (b != ' ' && b != '"' && b != '\'')
+				break;
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * Finds where the next field starts after a separator, which may be
+	 * spaces, a separator, or a separator with spaces around it.
+	 */
+	private static int nextField(ByteBuffer buf, int i, int end) {
+		while (i < end && buf.get(i) == ' ')
+			i++;
+		if (i < end) {
+			byte b = buf.get(i);
+			if (b == ',' || b == '\t' || b == ';')
+				i++;
+		}
+		return skipPadding(buf, i, end);
+	}
+
+	/**
+	 * @return				Index of the first field separator or space at or after i, or end if there is none
+	 */
+	private static int nextSeparator(ByteBuffer buf, int i, int end) {
+		while (i < end) {
+			byte b = buf.get(i);
+			if (b == ',' || b == '\t' || b == ';' || b == ' ')
+				break;
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,168 @@
+package org.cooltrainer.xval;
+
+/**
+ * The XValResultBatch class stores decryption results for many consoles
+ * as two parallel columns of longs: serial numbers and decrypted 'X' values.
+ *
+ * That is sixteen bytes per console with no per-console objects, and scans
+ * walk straight through two arrays. Results are read through index-based
+ * accessors instead of being wrapped in {@link XVal} instances.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValResultBatch {
+	long[] serials;
+	long[] decrypted;
+	int size;
+
+	/**
+	 * @param capacity			Number of results to make room for up front
+	 */
+	public XValResultBatch(int capacity) {
+		this.serials = new long[capacity];
+		this.decrypted = new long[capacity];
+	}
+
+	/**
+	 * Wraps existing columns without copying them.
+	 *
+	 * @param serials			Console serial numbers as numbers
+	 * @param decrypted			Decrypted 'X' values, in the same order as serials
+	 * @param size				Number of results held at the start of each column
+	 */
+	XValResultBatch(long[] serials, long[] decrypted, int size) {
+		this.serials = serials;
+		this.decrypted = decrypted;
+		this.size = size;
+	}
+
+	/**
+	 * Appends a result, growing the columns if needed.
+	 *
+	 * @param serial			Console serial number as a number
+	 * @param decryptedXVal		Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	public void add(long serial, long decryptedXVal) {
+		if (this.size == this.serials.length)
+			grow();
+		this.serials[this.size] = serial;
+		this.decrypted[this.size] = decryptedXVal;
+		this.size++;
+	}
+
+	/**
+	 * Appends every result from another batch.
+	 *
+	 * @param other				Results to append
+	 */
+	public void addAll(XValResultBatch other) {
+		while (this.serials.length - this.size < other.size)
+			grow();
+		System.arraycopy(other.serials, 0, this.serials, this.size, other.size);
+		System.arraycopy(other.decrypted, 0, this.decrypted, this.size, other.size);
+		this.size += other.size;
+	}
+
+	/**
+	 * Removes every result, keeping the allocated columns for reuse.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * @return					Number of results held
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					Console serial number as a number
+	 */
+	public long getSerial(int index) {
+		checkIndex(index);
+		return this.serials[index];
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					Decrypted 'X' value, big-endian: high word, then low word
+	 */
+	public long getDecrypted(int index) {
+		checkIndex(index);
+		return this.decrypted[index];
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					true if that serial + xval match; see {@link XVal#isValidPair()}
+	 */
+	public boolean isValidPair(int index) {
+		return XVal.isValidPair(getDecrypted(index));
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					true if that X value is clean; see {@link XVal#isClean()}
+	 */
+	public boolean isClean(int index) {
+		return XVal.isClean(getDecrypted(index));
+	}
+
+	/**
+	 * @param index				Result index
+	 * @param flags				One or more {@link SecdataFlags} constants
+	 * @return					true if that result is a valid pair with any of the given flags
+	 */
+	public boolean has(int index, int flags) {
+		long value = getDecrypted(index);
+		return XVal.isValidPair(value) && ((int) value & flags) != 0;
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					Recorded flags as a mask of {@link SecdataFlags} constants, 0 for an invalid pair
+	 */
+	public int getFlagMask(int index) {
+		long value = getDecrypted(index);
+		return XVal.isValidPair(value) ? (int) value : 0;
+	}
+
+	/**
+	 * @param index				Result index
+	 * @return					secdata.bin flags in human-readable form; see {@link XVal#flags()}
+	 */
+	public String flags(int index) {
+		return SecdataFlags.describe(getDecrypted(index));
+	}
+
+	/**
+	 * Copies one result out as an {@link XVal}.
+	 *
+	 * @param index				Result index
+	 * @return					The decrypted X value at that index
+	 */
+	public XVal get(int index) {
+		return new XVal(getDecrypted(index));
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + this.size);
+	}
+
+	private void grow() {
+		int capacity = Math.max(16, this.serials.length * 2);
+		long[] serials = new long[capacity];
+		long[] decrypted = new long[capacity];
+		System.arraycopy(this.serials, 0, serials, 0, this.size);
+		System.arraycopy(this.decrypted, 0, decrypted, 0, this.size);
+		this.serials = serials;
+		this.decrypted = decrypted;
+	}
+}
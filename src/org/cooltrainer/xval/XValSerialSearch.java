@@ -0,0 +1,304 @@
+package org.cooltrainer.xval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The XValSerialSearch class recovers a partly unreadable serial number
+ * from its console's 'X' value, by trying every serial number the readable
+ * digits allow and keeping those that make a valid pair.
+ *
+ * Unknown digits are written as '?' (or '_'). Candidates are limited to
+ * what {@link Xbox360} knows a serial number can hold: weeks 01 through 53
+ * and factory codes 02, 03, 05, 06 and 07. A wrong serial number makes a
+ * valid pair about once in two billion tries, so a search of a few unknown
+ * digits almost always finds exactly one.
+ *
+ * Candidates are decrypted 64 at a time with {@link XValKernel} on every
+ * worker thread of an {@link XValBatchDecryptor}, and the search stops as
+ * soon as it has found as many matches as asked for.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValSerialSearch {
+	/**
+	 * Told about a search's progress, always on the thread that called
+	 * {@link XValSerialSearch#search(XValBatchDecryptor, int, Listener)}.
+	 */
+	public interface Listener {
+		/**
+		 * @param checked		Candidates tried so far
+		 * @param candidates	Candidates in total
+		 */
+		void progress(long checked, long candidates);
+
+		/**
+		 * Called once for each match the search returns, so never more often than the limit.
+		 *
+		 * @param serial		A serial number that makes a valid pair with the 'X' value
+		 */
+		void found(String serial);
+	}
+
+	/** Candidates a worker claims at a time */
+	private static final int CHUNK = 4096;
+
+	/** Milliseconds between progress reports */
+	private static final long PROGRESS_INTERVAL = 250;
+
+	private static final int[] FACTORIES = { 2, 3, 5, 6, 7 };
+	private static final int FIRST_WEEK = 1;
+	private static final int LAST_WEEK = 53;
+
+	private final long encrypted;
+
+	/** What the known digits add to every candidate */
+	private final long base;
+
+	/** What each choice of each unknown field adds, least significant field last */
+	private final long[][] choices;
+
+	private final long candidates;
+	private volatile boolean cancelled;
+
+	/**
+	 * @param pattern			Twelve characters, each a digit or '?' for an unreadable one
+	 * @param xval				The console's 'X' value
+	 * @throws XValException	If the pattern or 'X' value is malformed
+	 */
+	public XValSerialSearch(String pattern, String xval) throws XValException {
+		long[] parsed = new long[1];
+		if (!XValParser.parseXVal(xval, parsed, 0))
+			throw new XValException("XVal must be sixteen hexadecimal digits");
+		this.encrypted = parsed[0];
+
+		if (pattern.length() != 12)
+			throw new XValException("Serial pattern must be twelve characters");
+		for (int i = 0; i < 12; i++) {
+			char c = pattern.charAt(i);
+			if ((c < '0' || c > '9') && !unknown(c))
+				throw new XValException("Serial pattern may only hold digits and '?'");
+		}
+
+		List<long[]> fields = new ArrayList<long[]>();
+		long base = 0;
+
+		// Line, weekly number and year digit: any digit
+		for (int i = 0; i < 8; i++) {
+			long weight = pow10(11 - i);
+			char c = pattern.charAt(i);
+			if (unknown(c)) {
+				long[] digits = new long[10];
+				for (int d = 0; d < 10; d++)
+					digits[d] = d * weight;
+				fields.add(digits);
+			} else {
+				base += (c - '0') * weight;
+			}
+		}
+
+		// Week and factory code: only values a real serial number can hold
+		int[] weeks = new int[LAST_WEEK - FIRST_WEEK + 1];
+		for (int w = FIRST_WEEK; w <= LAST_WEEK; w++)
+			weeks[w - FIRST_WEEK] = w;
+		fields.add(matching(pattern, 8, weeks, 100));
+		fields.add(matching(pattern, 10, FACTORIES, 1));
+
+		this.base = base;
+		this.choices = fields.toArray(new long[fields.size()][]);
+		long candidates = 1;
+		for (long[] field : this.choices)
+			candidates *= field.length;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * @return					Number of serial numbers the pattern allows
+	 */
+	public long getCandidates() {
+		return this.candidates;
+	}
+
+	/**
+	 * Stops a running search early. Matches found so far are still returned.
+	 * If no search is running, the next one stops as soon as it starts.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Tries candidates on every worker thread until enough matches are found
+	 * or every candidate has been tried.
+	 *
+	 * @param pool				Decryptor whose worker threads to search on; not shut down by this class
+	 * @param maxMatches		Stop after this many matches, or 0 to try every candidate
+	 * @param listener			Told of progress and matches, or null
+	 * @return					Matching serial numbers, in the order found
+	 * @throws XValException	If interrupted while waiting for the workers
+	 */
+	public List<String> search(XValBatchDecryptor pool, int maxMatches, Listener listener) throws XValException {
+		AtomicLong next = new AtomicLong();
+		AtomicLong checked = new AtomicLong();
+		List<Long> matches = Collections.synchronizedList(new ArrayList<Long>());
+		AtomicBoolean done = new AtomicBoolean();
+
+		int threads = (int) Math.min(pool.getThreads(), (this.candidates + CHUNK - 1) / CHUNK);
+		List<Future<Object>> pending = new ArrayList<Future<Object>>(threads);
+		for (int i = 0; i < threads; i++)
+			pending.add(pool.submit(new Worker(next, checked, matches, maxMatches, done)));
+
+		List<String> found = new ArrayList<String>();
+		try {
+			for (Future<Object> worker : pending) {
+				while (true) {
+					try {
+						worker.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e) {
+						report(listener, matches, found, maxMatches, checked.get());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			done.set(true);
+			Thread.currentThread().interrupt();
+			throw new XValException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			done.set(true);
+			throw new XValException(e.getCause());
+		} finally {
+			// Only now, so a cancel() made before or during this search isn't lost
+			this.cancelled = false;
+		}
+		report(listener, matches, found, maxMatches, checked.get());
+		return found;
+	}
+
+	/**
+	 * Passes new matches and progress to the listener. Workers finishing
+	 * together can overshoot the limit by a match or two, and those are
+	 * left out.
+	 */
+	private void report(Listener listener, List<Long> matches, List<String> found, int maxMatches, long checked) {
+		synchronized (matches) {
+			for (int i = found.size(); i < matches.size() && (maxMatches == 0 || i < maxMatches); i++) {
+				String serial = format(matches.get(i));
+				found.add(serial);
+				if (listener != null)
+					listener.found(serial);
+			}
+		}
+		if (listener != null)
+			listener.progress(Math.min(checked, this.candidates), this.candidates);
+	}
+
+	/**
+	 * @param index				Candidate number, 0 through {@link #getCandidates()} - 1
+	 * @return					That candidate's packed serial number
+	 */
+	long candidate(long index) {
+		long serial = this.base;
+		for (int field = this.choices.length - 1; field >= 0; field--) {
+			long[] values = this.choices[field];
+			serial += values[(int) (index % values.length)];
+			index /= values.length;
+		}
+		return serial;
+	}
+
+	private static String format(long serial) {
+		char[] digits = new char[12];
+		for (int i = 11; i >= 0; i--) {
+			digits[i] = (char) ('0' + (int) (serial % 10));
+			serial /= 10;
+		}
+		return new String(digits);
+	}
+
+	private static boolean unknown(char c) {
+		return c == '?' || c == '_';
+	}
+
+	private static long pow10(int exponent) {
+		long pow = 1;
+		while (exponent-- > 0)
+			pow *= 10;
+		return pow;
+	}
+
+	/**
+	 * Lists the allowed two-digit values that fit a pattern's two characters at offset.
+	 *
+	 * @return					Each value times weight
+	 */
+	private static long[] matching(String pattern, int offset, int[] allowed, long weight) {
+		char tens = pattern.charAt(offset);
+		char ones = pattern.charAt(offset + 1);
+		long[] values = new long[allowed.length];
+		int count = 0;
+		for (int value : allowed) {
+			if ((unknown(tens) || tens - '0' == value / 10) && (unknown(ones) || ones - '0' == value % 10))
+				values[count++] = value * weight;
+		}
+		long[] fitting = new long[count];
+		System.arraycopy(values, 0, fitting, 0, count);
+		return fitting;
+	}
+
+	/**
+	 * Claims chunks of candidates until none are left or the search is over.
+	 */
+	private class Worker implements Callable<Object> {
+		private final AtomicLong next, checked;
+		private final List<Long> matches;
+		private final int maxMatches;
+		private final AtomicBoolean done;
+
+		Worker(AtomicLong next, AtomicLong checked, List<Long> matches, int maxMatches, AtomicBoolean done) {
+			this.next = next;
+			this.checked = checked;
+			this.matches = matches;
+			this.maxMatches = maxMatches;
+			this.done = done;
+		}
+
+		public Object call() {
+			XValKernel kernel = XValKernel.forCurrentThread();
+			long[] serials = new long[CHUNK];
+			long[] encrypted = new long[CHUNK];
+			long[] decrypted = new long[CHUNK];
+			Arrays.fill(encrypted, XValSerialSearch.this.encrypted);
+
+			while (!cancelled && !this.done.get()) {
+				long from = this.next.getAndAdd(CHUNK);
+				if (from >= candidates)
+					break;
+				int count = (int) Math.min(CHUNK, candidates - from);
+				for (int i = 0; i < count; i++)
+					serials[i] = candidate(from + i);
+
+				kernel.decrypt(serials, encrypted, decrypted, 0, count);
+				for (int i = 0; i < count; i++) {
+					if (XVal.isValidPair(decrypted[i])) {
+						this.matches.add(serials[i]);
+						if (this.maxMatches > 0 && this.matches.size() >= this.maxMatches)
+							this.done.set(true);
+					}
+				}
+				this.checked.addAndGet(count);
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.cooltrainer.xval;
+
+import java.util.Locale;
+
+/**
+ * The XValWarmUp class does the one-time work behind a first check ahead of
+ * time: JCE provider lookup and algorithm setup, class loading of the
+ * decryption code, and building the flag description, manufacture date and
+ * factory name tables.
+ *
+ * Call {@link #run(Listener)} at startup on a background thread, ideally the
+ * thread that will do the checks, since each thread keeps its own Mac,
+ * SecretKeyFactory and Cipher. Everything else it prepares is shared.
+ *
+ * <pre>
+ * executor.submit(new Runnable() {
+ *     public void run() {
+ *         XValWarmUp.run(listener);
+ *     }
+ * });
+ * </pre>
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public final class XValWarmUp {
+	/**
+	 * Receives the time each warm-up step took.
+	 */
+	public interface Listener {
+		/**
+		 * @param warmUp		Step timings
+		 */
+		void warmedUp(XValWarmUp warmUp);
+	}
+
+	private long cryptoNanos, kernelNanos, tablesNanos;
+	private XValException failure;
+
+	private XValWarmUp() {
+	}
+
+	/**
+	 * Warms up on the calling thread. Never throws; a failure to resolve
+	 * the crypto algorithms is reported through {@link #getFailure()} and
+	 * the rest of the steps still run.
+	 *
+	 * @param listener		Told the timings when finished, or null
+	 * @return				Step timings
+	 */
+	public static XValWarmUp run(Listener listener) {
+		XValWarmUp warmUp = new XValWarmUp();
+
+		long start = System.nanoTime();
+		try {
+			XVal.warmUp();
+		} catch (XValException e) {
+			warmUp.failure = e;
+		}
+		long crypto = System.nanoTime();
+
+		// Loads the DES tables, and the bit-sliced ones through a full batch
+		XValKernel kernel = XValKernel.forCurrentThread();
+		long[] batch = new long[BitslicedDes.LANES];
+		kernel.decrypt(batch, batch, new long[BitslicedDes.LANES], 0, batch.length);
+		long kernelDone = System.nanoTime();
+
+		SecdataFlags.prepareDescriptions();
+		Locale locale = Locale.getDefault();
+		Xbox360.mfgDates(locale);
+		Xbox360.factoryNames(locale);
+		XValParser.isXVal("");
+		long tables = System.nanoTime();
+
+		warmUp.cryptoNanos = crypto - start;
+		warmUp.kernelNanos = kernelDone - crypto;
+		warmUp.tablesNanos = tables - kernelDone;
+		if (listener != null)
+			listener.warmedUp(warmUp);
+		return warmUp;
+	}
+
+	/**
+	 * @return				Nanoseconds spent resolving and first using the JCE algorithms
+	 */
+	public long getCryptoNanos() {
+		return this.cryptoNanos;
+	}
+
+	/**
+	 * @return				Nanoseconds spent loading the {@link XValKernel} DES tables
+	 */
+	public long getKernelNanos() {
+		return this.kernelNanos;
+	}
+
+	/**
+	 * @return				Nanoseconds spent building flag, date and factory name tables
+	 */
+	public long getTablesNanos() {
+		return this.tablesNanos;
+	}
+
+	/**
+	 * @return				Nanoseconds spent in total
+	 */
+	public long getTotalNanos() {
+		return this.cryptoNanos + this.kernelNanos + this.tablesNanos;
+	}
+
+	/**
+	 * @return				Why the JCE algorithms couldn't be resolved, or null if they were
+	 */
+	public XValException getFailure() {
+		return this.failure;
+	}
+
+	public String toString() {
+		return "Warm-up took " + getTotalNanos() / 1000000 + " ms: crypto " + this.cryptoNanos / 1000000
+				+ " ms, kernel " + this.kernelNanos / 1000000 + " ms, tables " + this.tablesNanos / 1000000 + " ms"
+				+ (this.failure != null ? ", crypto failed: " + this.failure.getMessage() : "");
+	}
+}
@@ -3,7 +3,7 @@ package org.cooltrainer.xval;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Locale;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The Xbox360 class takes an Xbox 360 serial number and extracts information from it.
@@ -36,7 +36,7 @@ public class Xbox360 {
 	 * Empty strings for unknown factory codes
 	 * so Locale.getDisplayCountry will return nothing
 	 */
-	private final String[] factories = {
+	private static final String[] factories = {
 		"",
 		"",
 		"MX",
@@ -48,17 +48,22 @@ public class Xbox360 {
 		"",
 		""
 	};
+	
+	private static final ConcurrentHashMap<Locale, String[]> mfgDateTables = new ConcurrentHashMap<Locale, String[]>();
+	private static final ConcurrentHashMap<Locale, String[]> factoryNameTables = new ConcurrentHashMap<Locale, String[]>();
 
 	/**
 	 * @param serial		An Xbox 360 serial number
 	 */
 	public Xbox360(String serial) {
-		if(Xbox360.validSerial(serial)) {			
-			this.line = Integer.parseInt(serial.substring(0, 1));
-			this.number = Integer.parseInt(serial.substring(1, 7));
-			int year = Integer.parseInt(serial.substring(7, 8));
-			this.week = Integer.parseInt(serial.substring(8, 10));
-			this.factory = Integer.parseInt(serial.substring(10, 12));
+		long start = XValMetrics.start();
+		long packed = XValParser.parseSerial(serial);
+		if(packed != XValParser.INVALID_SERIAL) {
+			this.line = (int) (packed / 100000000000L);
+			this.number = (int) (packed / 100000 % 1000000);
+			int year = (int) (packed / 10000 % 10);
+			this.week = (int) (packed / 100 % 100);
+			this.factory = (int) (packed % 100);
 			
 			/*
 			 * Year is given as a single digit
@@ -68,6 +73,7 @@ public class Xbox360 {
 			 */
 			this.year = year += (year < 5) ? 2010 : 2000;
 		}
+		XValMetrics.stop(XValMetrics.PARSE, start);
 	}
 	
 	/**
@@ -79,7 +85,7 @@ public class Xbox360 {
 	 * @return			Validity
 	 */
 	public static boolean validSerial(String serial) {
-		return Pattern.matches("^[0-9]{12}$", serial);
+		return XValParser.parseSerial(serial) != XValParser.INVALID_SERIAL;
 	}
 	
 	/**
@@ -92,7 +98,7 @@ public class Xbox360 {
 	 */
 	public static boolean validXVal(String xval) {
 		//Valid encrypted XVal string is 16 hex digits sans dashes
-		return Pattern.matches("^[0-9A-F]{16}$", xval.replace("-", "").toUpperCase());
+		return XValParser.isXVal(xval);
 	}
 	
 	/**
@@ -100,14 +106,11 @@ public class Xbox360 {
 	 * @return			YYYY-MM-DD formatted string of manufacture week.
 	 */
 	public String mfgDate() {
-		Calendar calendar = Calendar.getInstance();
-		calendar.clear();
-		calendar.set(Calendar.WEEK_OF_YEAR, this.week);
-		calendar.set(Calendar.YEAR, this.year);
-
-		//Return date of the first day of the manufacture week
-		SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
-		return df.format(calendar.getTime());
+		if(this.year == 0) {
+			//Serial didn't parse, so there's no table entry for it
+			return buildMfgDate(Calendar.getInstance(), new SimpleDateFormat("yyyy-MM-dd"), this.year, this.week);
+		}
+		return mfgDates(Locale.getDefault())[(this.year - 2005) * 100 + this.week];
 	}
 	
 	/**
@@ -115,8 +118,57 @@ public class Xbox360 {
 	 * @return			Name of country of manufacture in current Locale.
 	 */
 	public String factoryName() {
-		Locale locale = new Locale(Locale.getDefault().getISO3Language(), factory < 10 ? factories[factory] : "");
-		return locale.getDisplayCountry();
+		return factory < 10 ? factoryNames(Locale.getDefault())[factory] : "";
+	}
+	
+	/**
+	 * Manufacture dates for every year and week a serial number can encode,
+	 * built once per Locale since week numbering rules differ between Locales.
+	 * 
+	 * @param locale	Locale whose week rules to use
+	 * @return			Dates indexed by (year - 2005) * 100 + week
+	 */
+	static String[] mfgDates(Locale locale) {
+		String[] dates = mfgDateTables.get(locale);
+		if(dates == null) {
+			Calendar calendar = Calendar.getInstance(locale);
+			SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd", locale);
+			dates = new String[10 * 100];
+			for(int i = 0; i < dates.length; i++) {
+				dates[i] = buildMfgDate(calendar, df, 2005 + i / 100, i % 100);
+			}
+			//Another thread may have built the same table meanwhile; either copy will do
+			mfgDateTables.putIfAbsent(locale, dates);
+		}
+		return dates;
+	}
+	
+	/**
+	 * Translated names of every factory code's country, built once per Locale.
+	 * 
+	 * @param locale	Locale to translate names into
+	 * @return			Names indexed by factory code
+	 */
+	static String[] factoryNames(Locale locale) {
+		String[] names = factoryNameTables.get(locale);
+		if(names == null) {
+			String language = locale.getISO3Language();
+			names = new String[factories.length];
+			for(int i = 0; i < names.length; i++) {
+				names[i] = new Locale(language, factories[i]).getDisplayCountry(locale);
+			}
+			factoryNameTables.putIfAbsent(locale, names);
+		}
+		return names;
+	}
+	
+	private static String buildMfgDate(Calendar calendar, SimpleDateFormat df, int year, int week) {
+		calendar.clear();
+		calendar.set(Calendar.WEEK_OF_YEAR, week);
+		calendar.set(Calendar.YEAR, year);
+
+		//Return date of the first day of the manufacture week
+		return df.format(calendar.getTime());
 	}
 	
 	/**
@@ -0,0 +1,150 @@
+package org.cooltrainer.xval;
+
+import java.util.Random;
+
+/**
+ * The XValKernelCheck class checks that {@link XValKernel} and
+ * {@link BitslicedDes} give the same answers as {@link XVal}'s JCE path.
+ *
+ * <pre>
+ * java org.cooltrainer.xval.XValKernelCheck [pairs [seed]]
+ * </pre>
+ *
+ * Edge-case pairs come first, then random ones (100000 unless told
+ * otherwise). Each pair is decrypted through JCE and through every kernel
+ * path: one pair at a time, with a reusable key schedule, 64 at a time
+ * with bit-sliced DES and through a key cache. Each decrypted value is
+ * also encrypted back with both. Mismatches are printed. Exits with 0 if
+ * there were none and 1 otherwise.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValKernelCheck {
+	/** Mismatches printed before the rest are only counted */
+	private static final int SHOWN = 20;
+
+	private static final long[] EDGE_SERIALS = {
+		0L, 1L, 9L, 10L, 999999999999L, 100000000000L, 123456789012L, 111111111111L, 500000000000L, 999999999998L
+	};
+
+	private static final long[] EDGE_XVALS = {
+		0L, -1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE, 0x5555555555555555L, 0xAAAAAAAAAAAAAAAAL, 0x00000000FFFFFFFFL, 0xFFFFFFFF00000000L
+	};
+
+	private final XValKernel kernel = new XValKernel();
+	private final XValKeyCache keyCache = new XValKeyCache(1024);
+	private long checked, mismatches;
+
+	public static void main(String[] args) throws XValException {
+		int pairs = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : System.nanoTime();
+
+		XValKernelCheck check = new XValKernelCheck();
+		check.edgeCases();
+		check.random(pairs, new Random(seed));
+		check.nonNumericSerials();
+
+		System.out.println(check.checked + " pairs checked with seed " + seed + ", " + check.mismatches + " mismatches");
+		System.exit(check.mismatches == 0 ? 0 : 1);
+	}
+
+	private void edgeCases() throws XValException {
+		int count = EDGE_SERIALS.length * EDGE_XVALS.length;
+		long[] serials = new long[count];
+		long[] encrypted = new long[count];
+		int n = 0;
+		for (long serial : EDGE_SERIALS) {
+			for (long xval : EDGE_XVALS) {
+				serials[n] = serial;
+				encrypted[n] = xval;
+				n++;
+			}
+		}
+		compare(serials, encrypted, count);
+	}
+
+	private void random(int pairs, Random random) throws XValException {
+		// Odd batch sizes leave a tail that misses the bit-sliced path
+		long[] serials = new long[1000];
+		long[] encrypted = new long[1000];
+		while (pairs > 0) {
+			int count = Math.min(pairs, 1 + random.nextInt(serials.length));
+			for (int i = 0; i < count; i++) {
+				// Some serials repeat, so the key cache gets hits as well as misses
+				serials[i] = (i > 0 && random.nextInt(4) == 0) ? serials[random.nextInt(i)] : (random.nextLong() >>> 1) % 1000000000000L;
+				encrypted[i] = random.nextLong();
+			}
+			compare(serials, encrypted, count);
+			pairs -= count;
+		}
+	}
+
+	/**
+	 * Serial numbers the kernel can't take must still decrypt through JCE when a key cache is given.
+	 */
+	private void nonNumericSerials() throws XValException {
+		String[] serials = { "", "12345", "ABCDEFGHIJKL", "1234567890123", "12345678901x" };
+		for (String serial : serials) {
+			String xval = "0123456789ABCDEF";
+			long expected = new XVal(serial, xval).getDecrypted();
+			check("cached constructor", serial, 0x0123456789ABCDEFL, expected, new XVal(serial, xval, this.keyCache).getDecrypted());
+		}
+	}
+
+	private void compare(long[] serials, long[] encrypted, int count) throws XValException {
+		long[] batch = new long[count];
+		long[] cachedBatch = new long[count];
+		this.kernel.decrypt(serials, encrypted, batch, 0, count);
+		this.kernel.decrypt(serials, encrypted, cachedBatch, 0, count, this.keyCache);
+
+		for (int i = 0; i < count; i++) {
+			long serial = serials[i];
+			String serialText = pad(serial);
+			long expected = toLong(XVal.DecryptXVal(serialText, toBytes(encrypted[i])));
+
+			check("decrypt", serialText, encrypted[i], expected, this.kernel.decrypt(serial, encrypted[i]));
+			check("schedule", serialText, encrypted[i], expected, XValKernel.decrypt(this.kernel.schedule(serial), encrypted[i]));
+			check("bit-sliced", serialText, encrypted[i], expected, batch[i]);
+			check("key cache", serialText, encrypted[i], expected, XValKernel.decrypt(this.keyCache.schedule(serial, this.kernel), encrypted[i]));
+			check("bit-sliced with key cache", serialText, encrypted[i], expected, cachedBatch[i]);
+
+			long reencrypted = toLong(XVal.EncryptXVal(serialText, (int) expected, (int) (expected >>> 32)));
+			check("JCE encrypt", serialText, encrypted[i], encrypted[i], reencrypted);
+			check("encrypt", serialText, encrypted[i], encrypted[i], this.kernel.encrypt(serial, expected));
+			this.checked++;
+		}
+	}
+
+	private void check(String path, String serial, long encrypted, long expected, long actual) {
+		if (expected == actual)
+			return;
+		if (this.mismatches++ < SHOWN)
+			System.out.println(path + ": serial " + serial + ", 'X' value " + Long.toHexString(encrypted)
+					+ ": expected " + Long.toHexString(expected) + ", got " + Long.toHexString(actual));
+	}
+
+	private static String pad(long serial) {
+		String digits = Long.toString(serial);
+		StringBuilder padded = new StringBuilder(12);
+		for (int i = digits.length(); i < 12; i++)
+			padded.append('0');
+		return padded.append(digits).toString();
+	}
+
+	private static byte[] toBytes(long value) {
+		byte[] bytes = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	private static long toLong(byte[] bytes) {
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = (value << 8) | (bytes[i] & 0xFF);
+		return value;
+	}
+}
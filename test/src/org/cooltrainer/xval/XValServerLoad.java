@@ -0,0 +1,131 @@
+package org.cooltrainer.xval;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The XValServerLoad class measures how many checks per second an
+ * XValServer answers.
+ *
+ * <pre>
+ * java org.cooltrainer.xval.XValServerLoad [host [port [connections [seconds]]]]
+ * </pre>
+ *
+ * Each connection is kept alive and sends GET /check requests one after
+ * another, each waiting for the previous response, for a different serial
+ * every time. Defaults are 127.0.0.1, port 8360, 8 connections and 10
+ * seconds. Prints requests per second and exits with 1 if any response
+ * wasn't 200.
+ *
+ * @author Nicole Reid <root@cooltrainer.org>
+ * @since 2026-10-17
+ */
+public class XValServerLoad {
+	private static final AtomicLong answered = new AtomicLong();
+	private static final AtomicLong failed = new AtomicLong();
+	private static volatile boolean running = true;
+
+	public static void main(String[] args) throws Exception {
+		final String host = (args.length > 0) ? args[0] : "127.0.0.1";
+		final int port = (args.length > 1) ? Integer.parseInt(args[1]) : 8360;
+		int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+		int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+		Thread[] clients = new Thread[connections];
+		for (int i = 0; i < connections; i++) {
+			final int client = i;
+			clients[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						load(host, port, client);
+					} catch (IOException e) {
+						System.out.println("Connection " + client + ": " + e);
+						failed.incrementAndGet();
+					}
+				}
+			});
+			clients[i].start();
+		}
+
+		// A second of warm-up before counting
+		Thread.sleep(1000);
+		long start = System.nanoTime();
+		long before = answered.get();
+		Thread.sleep(seconds * 1000L);
+		long count = answered.get() - before;
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		running = false;
+		for (Thread client : clients)
+			client.join();
+
+		System.out.println(connections + " connections, " + count + " requests in " + Math.round(elapsed) + " s: "
+				+ Math.round(count / elapsed) + " requests/s, " + failed.get() + " failed");
+		System.exit(failed.get() == 0 ? 0 : 1);
+	}
+
+	private static void load(String host, int port, int client) throws IOException {
+		Socket socket = new Socket(host, port);
+		try {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = new BufferedInputStream(socket.getInputStream(), 16384);
+			StringBuilder line = new StringBuilder(128);
+			for (long serial = client * 1000000000L; running; serial++) {
+				String request = "GET /check?serial=" + pad(serial) + "&xval=ABE5-03C6-FF66-2168 HTTP/1.1\r\nHost: " + host + "\r\n\r\n";
+				out.write(request.getBytes("US-ASCII"));
+				out.flush();
+				if (!readResponse(in, line))
+					failed.incrementAndGet();
+				answered.incrementAndGet();
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Reads one response and discards its body.
+	 *
+	 * @return				true if the status was 200
+	 */
+	private static boolean readResponse(InputStream in, StringBuilder line) throws IOException {
+		boolean ok = readLine(in, line).startsWith("HTTP/1.1 200 ");
+		int length = 0;
+		String header;
+		while ((header = readLine(in, line)).length() > 0) {
+			if (header.regionMatches(true, 0, "Content-Length:", 0, 15))
+				length = Integer.parseInt(header.substring(15).trim());
+		}
+		while (length > 0) {
+			long skipped = in.skip(length);
+			if (skipped <= 0)
+				throw new IOException("Response body cut short");
+			length -= skipped;
+		}
+		return ok;
+	}
+
+	private static String readLine(InputStream in, StringBuilder line) throws IOException {
+		line.setLength(0);
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0)
+				throw new IOException("Connection closed");
+			if (c != '\r')
+				line.append((char) c);
+		}
+		return line.toString();
+	}
+
+	private static String pad(long serial) {
+		String digits = Long.toString(serial % 1000000000000L);
+		StringBuilder padded = new StringBuilder(12);
+		for (int i = digits.length(); i < 12; i++)
+			padded.append('0');
+		return padded.append(digits).toString();
+	}
+}